@@ -15,10 +15,11 @@ public class BigFraction implements Comparable<BigFraction> {
 	private final BigInteger nom;
 	private final BigInteger denom;
 
-	public static final BigFraction ONE = new BigFraction(new BigInteger("1"), new BigInteger("1"));
-	public static final BigFraction TWO = new BigFraction(new BigInteger("2"), new BigInteger("1"));
-	public static final BigFraction ONE_HALF = new BigFraction(new BigInteger("1"), new BigInteger("2"));
-	public static final BigFraction ONE_THIRD = new BigFraction(new BigInteger("1"), new BigInteger("3"));
+	public static final BigFraction ZERO = new BigFraction(BigInteger.ZERO, BigInteger.ONE, true);
+	public static final BigFraction ONE = new BigFraction(BigInteger.ONE, BigInteger.ONE, true);
+	public static final BigFraction TWO = new BigFraction(BigInteger.valueOf(2), BigInteger.ONE, true);
+	public static final BigFraction ONE_HALF = new BigFraction(BigInteger.ONE, BigInteger.valueOf(2), true);
+	public static final BigFraction ONE_THIRD = new BigFraction(BigInteger.ONE, BigInteger.valueOf(3), true);
 
 	/**
 	 * * A fraction of BigIntegers that supports various arithmethic operations. A
@@ -31,25 +32,32 @@ public class BigFraction implements Comparable<BigFraction> {
 	 *             When {@code denominator} is equal to zero.
 	 */
 	public BigFraction(BigInteger nominator, BigInteger denominator) {
-		if (BigInteger.ZERO.equals(denominator)) {
-			throw new IllegalArgumentException("Denominator must not be zero.");
-		}
-		boolean flip = false;
-		if (nominator.compareTo(BigInteger.ZERO) < 0) {
-			nominator = nominator.negate();
-			flip = true;
-		}
-		if (denominator.compareTo(BigInteger.ZERO) < 0) {
-			denominator = denominator.negate();
-			if (flip) {
-				flip = false;
-			} else {
-				flip = true;
+		this(nominator, denominator, false);
+	}
+
+	/**
+	 * Creates the fraction nominator/denominator. If reduced is true, the caller
+	 * guarantees that gcd(nominator, denominator) = 1 and that the denominator is
+	 * positive, and the fraction is taken as it is. The arithmetic below keeps
+	 * its results reduced, so it never pays for a second normalization.
+	 */
+	private BigFraction(BigInteger nominator, BigInteger denominator, boolean reduced) {
+		if (!reduced) {
+			if (denominator.signum() == 0) {
+				throw new IllegalArgumentException("Denominator must not be zero.");
+			}
+			if (denominator.signum() < 0) {
+				nominator = nominator.negate();
+				denominator = denominator.negate();
+			}
+			BigInteger t = Gcd.gcd(nominator, denominator);
+			if (!t.equals(BigInteger.ONE)) {
+				nominator = nominator.divide(t);
+				denominator = denominator.divide(t);
 			}
 		}
-		BigInteger t = gcd(nominator, denominator);
-		nom = flip ? nominator.divide(t).negate() : nominator.divide(t);
-		denom = denominator.divide(t);
+		nom = nominator;
+		denom = denominator;
 	}
 
 	/**
@@ -78,19 +86,7 @@ public class BigFraction implements Comparable<BigFraction> {
 	 */
 
 	public BigFraction(long nom, long denom) {
-		this(new BigInteger("" + nom), new BigInteger("" + denom));
-	}
-
-	/**
-	 * Returns the greatest common integer divisor of a and b using the euclidian
-	 * algorithm.
-	 * 
-	 * @param a
-	 * @param b
-	 * @return gcd(a, b)
-	 */
-	private static BigInteger gcd(BigInteger a, BigInteger b) {
-		return (b.compareTo(BigInteger.ZERO) == 0) ? a : gcd(b, a.mod(b));
+		this(BigInteger.valueOf(nom), BigInteger.valueOf(denom));
 	}
 
 	/**
@@ -116,13 +112,34 @@ public class BigFraction implements Comparable<BigFraction> {
 	 * @return this + f
 	 */
 	public BigFraction plus(BigFraction f) {
-		BigInteger tNominator = denom.multiply(f.getDenominator());
-		BigInteger tDenominator = nom.multiply(f.denom).add(f.nom.multiply(denom));
-		BigInteger gcd = gcd(tDenominator, tNominator);
-		tDenominator = tDenominator.divide(gcd);
-		tNominator = tNominator.divide(gcd);
-		BigFraction newfrac = new BigFraction(tDenominator, tNominator);
-		return newfrac;
+		return add(f.nom, f.denom);
+	}
+
+	/**
+	 * Returns this + n/d for a reduced n/d with d > 0. Only the gcd g of the
+	 * denominators is divided out before multiplying (Henrici): the sum
+	 * n1*(d2/g) + n2*(d1/g) can only share factors of g with the new
+	 * denominator, so the remaining gcd is taken with the small g instead of
+	 * the full product.
+	 */
+	private BigFraction add(BigInteger n, BigInteger d) {
+		if (n.signum() == 0)
+			return this;
+		if (nom.signum() == 0)
+			return new BigFraction(n, d, true);
+		if (denom.equals(d)) {
+			return new BigFraction(nom.add(n), denom, false);
+		}
+		BigInteger g = Gcd.gcd(denom, d);
+		if (g.equals(BigInteger.ONE)) {
+			return new BigFraction(nom.multiply(d).add(n.multiply(denom)), denom.multiply(d), true);
+		}
+		BigInteger d1 = denom.divide(g);
+		BigInteger t = nom.multiply(d.divide(g)).add(n.multiply(d1));
+		BigInteger g2 = Gcd.gcd(t, g);
+		if (g2.equals(BigInteger.ONE))
+			return new BigFraction(t, d1.multiply(d), true);
+		return new BigFraction(t.divide(g2), d1.multiply(d.divide(g2)), true);
 	}
 
 	/**
@@ -134,7 +151,8 @@ public class BigFraction implements Comparable<BigFraction> {
 	 * @return this + k
 	 */
 	public BigFraction plus(long k) {
-		return plus(new BigFraction(k, 1));
+		// gcd(nom + k * denom, denom) = gcd(nom, denom) = 1
+		return new BigFraction(nom.add(denom.multiply(BigInteger.valueOf(k))), denom, true);
 	}
 
 	/**
@@ -146,8 +164,7 @@ public class BigFraction implements Comparable<BigFraction> {
 	 * @return this - f
 	 */
 	public BigFraction minus(BigFraction f) {
-		BigFraction tmp = new BigFraction(f.getNominator().negate(), f.getDenominator());
-		return this.plus(tmp);
+		return add(f.nom.negate(), f.denom);
 	}
 
 	/**
@@ -159,7 +176,7 @@ public class BigFraction implements Comparable<BigFraction> {
 	 * @return this - k
 	 */
 	public BigFraction minus(long k) {
-		return minus(new BigFraction(k, 1));
+		return new BigFraction(nom.subtract(denom.multiply(BigInteger.valueOf(k))), denom, true);
 	}
 
 	/**
@@ -171,7 +188,30 @@ public class BigFraction implements Comparable<BigFraction> {
 	 * @return this * f
 	 */
 	public BigFraction multiply(BigFraction f) {
-		return new BigFraction(nom.multiply(f.getNominator()), denom.multiply(f.getDenominator()));
+		return multiply(f.nom, f.denom);
+	}
+
+	/**
+	 * Returns this * n/d for a reduced n/d with d > 0, cancelling crosswise
+	 * before multiplying so the product is reduced without a gcd of the full
+	 * products.
+	 */
+	private BigFraction multiply(BigInteger n, BigInteger d) {
+		if (nom.signum() == 0 || n.signum() == 0)
+			return ZERO;
+		BigInteger g1 = Gcd.gcd(nom, d);
+		BigInteger g2 = Gcd.gcd(n, denom);
+		BigInteger n1 = nom;
+		BigInteger d1 = denom;
+		if (!g1.equals(BigInteger.ONE)) {
+			n1 = n1.divide(g1);
+			d = d.divide(g1);
+		}
+		if (!g2.equals(BigInteger.ONE)) {
+			n = n.divide(g2);
+			d1 = d1.divide(g2);
+		}
+		return new BigFraction(n1.multiply(n), d1.multiply(d), true);
 	}
 
 	/**
@@ -181,7 +221,7 @@ public class BigFraction implements Comparable<BigFraction> {
 	 * @return k * this
 	 */
 	public BigFraction multiply(long k) {
-		return multiply(new BigFraction(k, 1));
+		return multiply(BigInteger.valueOf(k), BigInteger.ONE);
 	}
 
 	/**
@@ -193,10 +233,12 @@ public class BigFraction implements Comparable<BigFraction> {
 	 * @return this + f
 	 */
 	public BigFraction divide(BigFraction f) {
-		if (f.nom.equals(BigInteger.ZERO)) {
+		if (f.nom.signum() == 0) {
 			throw new ArithmeticException("Cannot divide by zero.");
 		}
-		return this.multiply(new BigFraction(f.getDenominator(), f.getNominator()));
+		if (f.nom.signum() < 0)
+			return multiply(f.denom.negate(), f.nom.negate());
+		return multiply(f.denom, f.nom);
 	}
 
 	/**
@@ -206,19 +248,76 @@ public class BigFraction implements Comparable<BigFraction> {
 	 * @return this / k
 	 */
 	public BigFraction divide(long k) {
-		return divide(new BigFraction(k, 1));
+		if (k == 0) {
+			throw new ArithmeticException("Cannot divide by zero.");
+		}
+		BigInteger d = BigInteger.valueOf(k);
+		if (k < 0)
+			return multiply(BigInteger.ONE.negate(), d.negate());
+		return multiply(BigInteger.ONE, d);
 	}
 
 	/**
 	 * Raises this fraction to a power and returns the result. This fraction won't
-	 * be mutated.
+	 * be mutated. Nominator and denominator are raised separately by repeated
+	 * squaring; a negative i raises the inverse fraction.
 	 * 
 	 * @param i
 	 *            The power to raise this fraction to.
 	 * @return this^i
+	 * @throws ArithmeticException
+	 *             if i is negative and this fraction is zero.
 	 */
 	public BigFraction pow(int i) {
-		return new BigFraction(this.nom.pow(i), this.denom.pow(i));
+		if (i >= 0) {
+			// powers of coprime numbers are coprime
+			return new BigFraction(this.nom.pow(i), this.denom.pow(i), true);
+		}
+		if (nom.signum() == 0) {
+			throw new ArithmeticException("Cannot divide by zero.");
+		}
+		int e = -(i + 1);
+		// this^i = (1/this)^(-i) = (1/this)^e * (1/this), avoiding -Integer.MIN_VALUE
+		BigInteger n = this.denom.pow(e).multiply(this.denom);
+		BigInteger d = this.nom.pow(e).multiply(this.nom);
+		if (d.signum() < 0)
+			return new BigFraction(n.negate(), d.negate(), true);
+		return new BigFraction(n, d, true);
+	}
+
+	/**
+	 * Returns the whole part of this fraction, i.e. the fraction rounded towards
+	 * zero.
+	 */
+	public BigInteger wholePart() {
+		return nom.divide(denom);
+	}
+
+	/**
+	 * Returns the fractional part of this fraction. It has the sign of this
+	 * fraction, so this = wholePart() + fractionalPart().
+	 */
+	public BigFraction fractionalPart() {
+		// gcd(nom rem denom, denom) = gcd(nom, denom) = 1
+		return new BigFraction(nom.remainder(denom), denom, true);
+	}
+
+	/**
+	 * Returns the greatest whole number that is less than or equal to this
+	 * fraction.
+	 */
+	public BigInteger floor() {
+		BigInteger[] qr = nom.divideAndRemainder(denom);
+		return qr[1].signum() < 0 ? qr[0].subtract(BigInteger.ONE) : qr[0];
+	}
+
+	/**
+	 * Returns the smallest whole number that is greater than or equal to this
+	 * fraction.
+	 */
+	public BigInteger ceil() {
+		BigInteger[] qr = nom.divideAndRemainder(denom);
+		return qr[1].signum() > 0 ? qr[0].add(BigInteger.ONE) : qr[0];
 	}
 
 	/**
@@ -227,11 +326,21 @@ public class BigFraction implements Comparable<BigFraction> {
 	 * @return the inverse fraction.
 	 */
 	public BigFraction invert() {
-		return new BigFraction(denom, nom);
+		if (nom.signum() == 0) {
+			throw new IllegalArgumentException("Denominator must not be zero.");
+		}
+		if (nom.signum() < 0)
+			return new BigFraction(denom.negate(), nom.negate(), true);
+		return new BigFraction(denom, nom, true);
 	}
 
 	@Override
 	public int compareTo(BigFraction f) {
+		int s = nom.signum();
+		if (s != f.nom.signum())
+			return Integer.compare(s, f.nom.signum());
+		if (denom.equals(f.denom))
+			return nom.compareTo(f.nom);
 		BigInteger tn = nom.multiply(f.getDenominator());
 		BigInteger fn = f.getNominator().multiply(denom);
 		return tn.compareTo(fn);
@@ -41,16 +41,18 @@ public class Fraction implements Comparable<Fraction> {
 		negativ = (negativ ^ denominator < 0);
 		if (denominator < 0)
 			denominator *= -1;
-		long t = ggt(nominator, denominator);
+		if (denominator == Long.MIN_VALUE && (nominator == 0 || nominator == Long.MIN_VALUE)) {
+			// the gcd would be 2^63, which Gcd.gcd rejects; the value is 0 or 1
+			nom = nominator == 0 ? 0 : 1;
+			denom = 1;
+			return;
+		}
+		long t = Gcd.gcd(nominator, denominator);
 		nom = negativ ? -1 * nominator / t : nominator / t;
 		denom = denominator / t;
 
 	}
 
-	private long ggt(long a, long b) {
-		return (b == 0) ? a : ggt(b, a % b);
-	}
-
 	public long getNominator() {
 		return nom;
 	}
@@ -60,22 +62,35 @@ public class Fraction implements Comparable<Fraction> {
 	}
 
 	/**
-	 * The fractional part of this fraction.
+	 * The fractional part of this fraction. It has the sign of this fraction,
+	 * so this = wholePart() + fractionalPart().
 	 * 
-	 * @return new Fraction((nominator mod denominator) , denominator)
+	 * @return new Fraction((nominator rem denominator) , denominator)
 	 */
 	public Fraction fractionalPart() {
-		boolean negativ = nom < 0;
-		long c = negativ ? -1 * nom : nom;
-		while (c > denom) {
-			c -= denom;
-		}
-		Fraction newfrac = new Fraction(negativ ? -1 * c : c, denom);
-		return newfrac;
+		return new Fraction(nom % denom, denom);
 	}
 
+	/**
+	 * The whole part of this fraction, i.e. the fraction rounded towards zero.
+	 */
 	public long wholePart() {
-		return this.minus(this.fractionalPart()).getNominator();
+		return nom / denom;
+	}
+
+	/**
+	 * The greatest whole number that is less than or equal to this fraction.
+	 */
+	public long floor() {
+		return Math.floorDiv(nom, denom);
+	}
+
+	/**
+	 * The smallest whole number that is greater than or equal to this fraction.
+	 */
+	public long ceil() {
+		long q = nom / denom;
+		return nom % denom > 0 ? q + 1 : q;
 	}
 
 	public Fraction plus(Fraction f) {
@@ -87,7 +102,7 @@ public class Fraction implements Comparable<Fraction> {
 		negativ = (negativ ^ en < 0);
 		if (en < 0)
 			en *= -1;
-		long t = ggt(ez, en);
+		long t = Gcd.gcd(ez, en);
 		ez = negativ ? -1 * ez / t : ez / t;
 		en = en / t;
 		Fraction newfrac = new Fraction(ez, en);
@@ -117,7 +132,7 @@ public class Fraction implements Comparable<Fraction> {
 		negativ = (negativ ^ en < 0);
 		if (en < 0)
 			en *= -1;
-		long t = ggt(ez, en);
+		long t = Gcd.gcd(ez, en);
 		ez = negativ ? -1 * ez / t : ez / t;
 		en = en / t;
 		Fraction newfrac = new Fraction(ez, en);
@@ -140,6 +155,40 @@ public class Fraction implements Comparable<Fraction> {
 		return this.divide(new Fraction(n, 1));
 	}
 
+	/**
+	 * Returns the sum of the given fractions. The sum is accumulated in a
+	 * {@link MutableFraction}, so no intermediate fractions are created.
+	 * 
+	 * @throws ArithmeticException
+	 *             if the sum does not fit into a fraction of longs.
+	 */
+	public static Fraction sum(Fraction... fs) {
+		MutableFraction acc = new MutableFraction();
+		for (Fraction f : fs) {
+			acc.add(f);
+		}
+		return acc.toFraction();
+	}
+
+	/**
+	 * Returns the dot product a[0]*b[0] + ... + a[n-1]*b[n-1], accumulated
+	 * like {@link #sum(Fraction...)}.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if a and b differ in length.
+	 * @throws ArithmeticException
+	 *             if the result does not fit into a fraction of longs.
+	 */
+	public static Fraction dot(Fraction[] a, Fraction[] b) {
+		if (a.length != b.length)
+			throw new IllegalArgumentException("Sizes don't match");
+		MutableFraction acc = new MutableFraction();
+		for (int i = 0; i < a.length; i++) {
+			acc.addProduct(a[i], b[i]);
+		}
+		return acc.toFraction();
+	}
+
 	public long toWholeNumber() {
 		if (denom != 1) {
 			throw new ArithmeticException("Fraction cannot be converted to a whole number.");
@@ -148,17 +197,37 @@ public class Fraction implements Comparable<Fraction> {
 	}
 
 	/**
+	 * Raises nominator and denominator to the |i|th power separately by
+	 * repeated squaring; the powers of coprime numbers are coprime, so no
+	 * reduction is needed. A negative i raises the inverse fraction.
 	 * 
 	 * @param i
 	 *            Exponent
 	 * @return This fraction to the ith power
+	 * @throws ArithmeticException
+	 *             if i is negative and this fraction is zero, or if the result
+	 *             does not fit into longs.
 	 */
 	public Fraction pow(int i) {
-		Fraction b = new Fraction(1, 1);
-		for (int j = 0; j < i; j++) {
-			b = this.multiply(b);
+		if (i < 0 && nom == 0) {
+			throw new ArithmeticException("Cannot divide by zero.");
+		}
+		long e = Math.abs((long) i);
+		long n = pow(nom, e);
+		long d = pow(denom, e);
+		return i < 0 ? new Fraction(d, n) : new Fraction(n, d);
+	}
+
+	private static long pow(long b, long e) {
+		long r = 1;
+		while (true) {
+			if ((e & 1) != 0)
+				r = Math.multiplyExact(r, b);
+			e >>>= 1;
+			if (e == 0)
+				return r;
+			b = Math.multiplyExact(b, b);
 		}
-		return b;
 	}
 
 	/**
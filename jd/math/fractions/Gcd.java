@@ -0,0 +1,72 @@
+package jd.math.fractions;
+
+import java.math.BigInteger;
+
+/**
+ * Greatest common divisors, shared by the fraction and matrix classes. This
+ * class cannot be instanciated.
+ *
+ * @author Juri Dispan
+ *
+ */
+
+public final class Gcd {
+
+	private Gcd() {
+		// cannot be instatiated.
+	}
+
+	/**
+	 * Returns the greatest common divisor of |a| and |b| using Stein's binary
+	 * algorithm, which needs only shifts and subtractions instead of the
+	 * divisions of the euclidian algorithm. gcd(a, 0) is |a|, in particular
+	 * gcd(0, 0) is 0.
+	 * <p>
+	 * The result is always positive or zero. The only gcd that does not fit
+	 * into a long is 2^63, when a and b are each 0 or Long.MIN_VALUE (but not
+	 * both 0).
+	 *
+	 * @return gcd(a, b)
+	 * @throws ArithmeticException
+	 *             if the gcd is 2^63.
+	 */
+	public static long gcd(long a, long b) {
+		a = Math.abs(a);
+		b = Math.abs(b);
+		if (a == 0 || b == 0) {
+			// Math.abs(Long.MIN_VALUE) is still negative
+			if ((a | b) < 0)
+				throw new ArithmeticException("long overflow");
+			return a | b;
+		}
+		int shift = Long.numberOfTrailingZeros(a | b);
+		if (shift == 63)
+			throw new ArithmeticException("long overflow");
+		// the unsigned shifts let |Long.MIN_VALUE| = 2^63 work as well
+		a >>>= Long.numberOfTrailingZeros(a);
+		do {
+			b >>>= Long.numberOfTrailingZeros(b);
+			// a and b are odd, make a the smaller one
+			long d = b - a;
+			long m = d >> 63;
+			a += d & m;
+			b = (d ^ m) - m;
+		} while (b != 0);
+		return a << shift;
+	}
+
+	/**
+	 * Returns the greatest common divisor of |a| and |b|. Values that fit into
+	 * a long are handled by {@link #gcd(long, long)}, bigger ones by
+	 * {@link BigInteger#gcd(BigInteger)}, which reduces them with a hybrid of
+	 * euclidian and binary steps.
+	 *
+	 * @return gcd(a, b)
+	 */
+	public static BigInteger gcd(BigInteger a, BigInteger b) {
+		if (a.bitLength() < 63 && b.bitLength() < 63)
+			return BigInteger.valueOf(gcd(a.longValue(), b.longValue()));
+		return a.gcd(b);
+	}
+
+}
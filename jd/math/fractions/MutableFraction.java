@@ -0,0 +1,292 @@
+package jd.math.fractions;
+
+/**
+ * A mutable fraction of long values, meant as an accumulator for loops that
+ * sum up or multiply many fractions. All operations change this object
+ * instead of creating a new one, so no garbage is produced.
+ * <p>
+ * Unlike {@link Fraction}, the fraction is only reduced lazily: sums are
+ * computed over the least common multiple of the denominators, the full
+ * reduction by gcd(nominator, denominator) is postponed until the value is
+ * read or an intermediate result would not fit into a long anymore. The
+ * denominator is always positive.
+ *
+ * @author Juri Dispan
+ *
+ */
+
+public class MutableFraction {
+
+	private long nom;
+
+	private long denom;
+
+	/**
+	 * Creates a mutable fraction with the value 0.
+	 */
+	public MutableFraction() {
+		this.nom = 0;
+		this.denom = 1;
+	}
+
+	/**
+	 * Creates a mutable fraction with the value nominator/denominator.
+	 *
+	 * @throws IllegalArgumentException
+	 *             When {@code denominator} is equal to zero.
+	 */
+	public MutableFraction(long nominator, long denominator) {
+		set(nominator, denominator);
+	}
+
+	/**
+	 * Creates a mutable fraction with the value of f.
+	 */
+	public MutableFraction(Fraction f) {
+		set(f);
+	}
+
+	/**
+	 * Sets this fraction to nominator/denominator.
+	 *
+	 * @return this
+	 * @throws IllegalArgumentException
+	 *             When {@code denominator} is equal to zero.
+	 */
+	public MutableFraction set(long nominator, long denominator) {
+		if (denominator == 0) {
+			throw new IllegalArgumentException("Denominator must not be zero.");
+		}
+		if (denominator < 0) {
+			nominator = Math.negateExact(nominator);
+			denominator = Math.negateExact(denominator);
+		}
+		this.nom = nominator;
+		this.denom = denominator;
+		return this;
+	}
+
+	/**
+	 * Sets this fraction to the value of f.
+	 *
+	 * @return this
+	 */
+	public MutableFraction set(Fraction f) {
+		this.nom = f.getNominator();
+		this.denom = f.getDenominator();
+		return this;
+	}
+
+	public long getNominator() {
+		reduce();
+		return nom;
+	}
+
+	public long getDenominator() {
+		reduce();
+		return denom;
+	}
+
+	/**
+	 * Adds f to this fraction.
+	 *
+	 * @return this
+	 * @throws ArithmeticException
+	 *             if the result does not fit into a fraction of longs.
+	 */
+	public MutableFraction add(Fraction f) {
+		return add(f.getNominator(), f.getDenominator());
+	}
+
+	/**
+	 * Adds n to this fraction.
+	 *
+	 * @return this
+	 * @throws ArithmeticException
+	 *             if the result does not fit into a fraction of longs.
+	 */
+	public MutableFraction add(long n) {
+		return add(n, 1);
+	}
+
+	/**
+	 * Subtracts f from this fraction.
+	 *
+	 * @return this
+	 * @throws ArithmeticException
+	 *             if the result does not fit into a fraction of longs.
+	 */
+	public MutableFraction subtract(Fraction f) {
+		return add(Math.negateExact(f.getNominator()), f.getDenominator());
+	}
+
+	/**
+	 * Subtracts n from this fraction.
+	 *
+	 * @return this
+	 * @throws ArithmeticException
+	 *             if the result does not fit into a fraction of longs.
+	 */
+	public MutableFraction subtract(long n) {
+		return add(Math.negateExact(n), 1);
+	}
+
+	/**
+	 * Multiplies this fraction by f.
+	 *
+	 * @return this
+	 * @throws ArithmeticException
+	 *             if the result does not fit into a fraction of longs.
+	 */
+	public MutableFraction multiply(Fraction f) {
+		return multiply(f.getNominator(), f.getDenominator());
+	}
+
+	/**
+	 * Multiplies this fraction by n.
+	 *
+	 * @return this
+	 * @throws ArithmeticException
+	 *             if the result does not fit into a fraction of longs.
+	 */
+	public MutableFraction multiply(long n) {
+		return multiply(n, 1);
+	}
+
+	/**
+	 * Divides this fraction by f.
+	 *
+	 * @return this
+	 * @throws ArithmeticException
+	 *             if f is zero or the result does not fit into a fraction of
+	 *             longs.
+	 */
+	public MutableFraction divide(Fraction f) {
+		if (f.getNominator() == 0) {
+			throw new ArithmeticException("Cannot divide by zero.");
+		}
+		if (f.getNominator() < 0)
+			return multiply(Math.negateExact(f.getDenominator()), Math.negateExact(f.getNominator()));
+		return multiply(f.getDenominator(), f.getNominator());
+	}
+
+	/**
+	 * Divides this fraction by n.
+	 *
+	 * @return this
+	 * @throws ArithmeticException
+	 *             if n is zero or the result does not fit into a fraction of
+	 *             longs.
+	 */
+	public MutableFraction divide(long n) {
+		if (n == 0) {
+			throw new ArithmeticException("Cannot divide by zero.");
+		}
+		if (n < 0)
+			return multiply(-1, Math.negateExact(n));
+		return multiply(1, n);
+	}
+
+	/**
+	 * Adds the product a*b to this fraction, the building block of dot
+	 * products.
+	 *
+	 * @return this
+	 * @throws ArithmeticException
+	 *             if the result does not fit into a fraction of longs.
+	 */
+	public MutableFraction addProduct(Fraction a, Fraction b) {
+		// a and b are reduced, so cross-reducing makes the product reduced
+		long g1 = Gcd.gcd(a.getNominator(), b.getDenominator());
+		long g2 = Gcd.gcd(b.getNominator(), a.getDenominator());
+		long n = Math.multiplyExact(a.getNominator() / g1, b.getNominator() / g2);
+		long d = Math.multiplyExact(a.getDenominator() / g2, b.getDenominator() / g1);
+		return add(n, d);
+	}
+
+	/**
+	 * Adds n/d, with d > 0. If the sum overflows, this fraction is reduced and
+	 * the sum is tried once more.
+	 */
+	private MutableFraction add(long n, long d) {
+		if (!tryAdd(n, d)) {
+			reduce();
+			if (!tryAdd(n, d))
+				throw new ArithmeticException("long overflow");
+		}
+		return this;
+	}
+
+	private boolean tryAdd(long n, long d) {
+		try {
+			if (d == denom) {
+				nom = Math.addExact(nom, n);
+				return true;
+			}
+			long g = Gcd.gcd(denom, d);
+			long a = d / g;
+			long s = Math.addExact(Math.multiplyExact(nom, a), Math.multiplyExact(n, denom / g));
+			denom = Math.multiplyExact(denom, a);
+			nom = s;
+			return true;
+		} catch (ArithmeticException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Multiplies by n/d, with d > 0. Cross-reduces first, so the result stays
+	 * as small as the factors allow. Cross-reducing misses the common factors
+	 * of this fraction itself, so if the product overflows, this fraction is
+	 * reduced and the product is tried once more.
+	 */
+	private MutableFraction multiply(long n, long d) {
+		if (!tryMultiply(n, d)) {
+			reduce();
+			if (!tryMultiply(n, d))
+				throw new ArithmeticException("long overflow");
+		}
+		return this;
+	}
+
+	private boolean tryMultiply(long n, long d) {
+		try {
+			long g1 = Gcd.gcd(nom, d);
+			long g2 = Gcd.gcd(n, denom);
+			long rn = Math.multiplyExact(nom / g1, n / g2);
+			denom = Math.multiplyExact(denom / g2, d / g1);
+			nom = rn;
+			return true;
+		} catch (ArithmeticException e) {
+			return false;
+		}
+	}
+
+	/** Divides nominator and denominator by their gcd. */
+	private void reduce() {
+		long t = Gcd.gcd(nom, denom);
+		if (t != 1) {
+			nom /= t;
+			denom /= t;
+		}
+	}
+
+	/**
+	 * Returns the (reduced) value of this fraction as an immutable
+	 * {@link Fraction}.
+	 */
+	public Fraction toFraction() {
+		return new Fraction(nom, denom);
+	}
+
+	public double decimalValue() {
+		return (nom + 0.0) / denom;
+	}
+
+	@Override
+	public String toString() {
+		reduce();
+		return nom + "/" + denom;
+	}
+
+}
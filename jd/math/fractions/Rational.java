@@ -0,0 +1,310 @@
+package jd.math.fractions;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+/**
+ * An exact fraction that computes with longs as long as possible. Operations
+ * cancel common factors before multiplying and detect overflow with
+ * {@link Math#multiplyExact(long, long)} and friends; only a result that does
+ * not fit into longs is represented by a {@link BigFraction}. Results that fit
+ * again are stored as longs again, so a single big intermediate value does not
+ * slow down the rest of a computation. A rational always has the property that
+ * gcd(nominator, denominator) = 1 and the denominator is positive.
+ *
+ * @author Juri Dispan
+ *
+ */
+
+public class Rational implements Comparable<Rational> {
+
+	private final long nom;
+
+	private final long denom;
+
+	/** The value if it does not fit into longs, null otherwise. */
+	private final BigFraction big;
+
+	public static final Rational ZERO = new Rational(0, 1);
+	public static final Rational ONE = new Rational(1, 1);
+
+	/**
+	 * A rational with the value nominator/denominator.
+	 *
+	 * @param nominator
+	 * @param denominator
+	 * @throws IllegalArgumentException
+	 *             When {@code denominator} is equal to zero.
+	 */
+	public Rational(long nominator, long denominator) {
+		if (denominator == 0) {
+			throw new IllegalArgumentException("Denominator must not be zero.");
+		}
+		if (denominator == Long.MIN_VALUE && (nominator == 0 || nominator == Long.MIN_VALUE)) {
+			// the gcd would be 2^63, which Gcd.gcd rejects; the value is 0 or 1
+			this.nom = nominator == 0 ? 0 : 1;
+			this.denom = 1;
+			this.big = null;
+			return;
+		}
+		long t = Gcd.gcd(nominator, denominator);
+		long n = nominator / t;
+		long d = denominator / t;
+		if (d < 0 && (n == Long.MIN_VALUE || d == Long.MIN_VALUE)) {
+			// -Long.MIN_VALUE is no long
+			this.nom = 0;
+			this.denom = 1;
+			this.big = new BigFraction(BigInteger.valueOf(nominator), BigInteger.valueOf(denominator));
+			return;
+		}
+		this.nom = d < 0 ? -n : n;
+		this.denom = d < 0 ? -d : d;
+		this.big = null;
+	}
+
+	/**
+	 * A rational with the value of f.
+	 */
+	public Rational(Fraction f) {
+		this(f.getNominator(), f.getDenominator());
+	}
+
+	/**
+	 * A rational with the value of f. It is stored as longs if it fits.
+	 */
+	public Rational(BigFraction f) {
+		if (fits(f)) {
+			this.nom = f.getNominator().longValue();
+			this.denom = f.getDenominator().longValue();
+			this.big = null;
+		} else {
+			this.nom = 0;
+			this.denom = 1;
+			this.big = f;
+		}
+	}
+
+	/** Takes an already reduced value with positive denominator. */
+	private Rational(long nom, long denom, BigFraction big) {
+		this.nom = nom;
+		this.denom = denom;
+		this.big = big;
+	}
+
+	private static boolean fits(BigFraction f) {
+		return f.getNominator().bitLength() < 64 && f.getDenominator().bitLength() < 64;
+	}
+
+	public BigInteger getNominator() {
+		return big == null ? BigInteger.valueOf(nom) : big.getNominator();
+	}
+
+	public BigInteger getDenominator() {
+		return big == null ? BigInteger.valueOf(denom) : big.getDenominator();
+	}
+
+	/**
+	 * Returns whether the value of this rational is stored as longs, i.e. fits
+	 * into a {@link Fraction}.
+	 */
+	public boolean isSmall() {
+		return big == null;
+	}
+
+	/**
+	 * Returns this + f.
+	 */
+	public Rational plus(Rational f) {
+		if (big == null && f.big == null) {
+			try {
+				long g = Gcd.gcd(denom, f.denom);
+				long s = Math.addExact(Math.multiplyExact(nom, f.denom / g), Math.multiplyExact(f.nom, denom / g));
+				long g2 = Gcd.gcd(s, g);
+				return new Rational(s / g2, Math.multiplyExact(denom / g, f.denom / g2), null);
+			} catch (ArithmeticException e) {
+				// fall through to BigFraction
+			}
+		}
+		return new Rational(toBigFraction().plus(f.toBigFraction()));
+	}
+
+	/**
+	 * Returns this + n.
+	 */
+	public Rational plus(long n) {
+		return plus(new Rational(n, 1));
+	}
+
+	/**
+	 * Returns this - f.
+	 */
+	public Rational minus(Rational f) {
+		return plus(f.negate());
+	}
+
+	/**
+	 * Returns this - n.
+	 */
+	public Rational minus(long n) {
+		return minus(new Rational(n, 1));
+	}
+
+	/**
+	 * Returns -this.
+	 */
+	public Rational negate() {
+		if (big == null && nom != Long.MIN_VALUE)
+			return new Rational(-nom, denom, null);
+		return new Rational(toBigFraction().multiply(-1));
+	}
+
+	/**
+	 * Returns this * f.
+	 */
+	public Rational multiply(Rational f) {
+		if (big == null && f.big == null) {
+			try {
+				long g1 = Gcd.gcd(nom, f.denom);
+				long g2 = Gcd.gcd(f.nom, denom);
+				return new Rational(Math.multiplyExact(nom / g1, f.nom / g2),
+						Math.multiplyExact(denom / g2, f.denom / g1), null);
+			} catch (ArithmeticException e) {
+				// fall through to BigFraction
+			}
+		}
+		return new Rational(toBigFraction().multiply(f.toBigFraction()));
+	}
+
+	/**
+	 * Returns this * n.
+	 */
+	public Rational multiply(long n) {
+		return multiply(new Rational(n, 1));
+	}
+
+	/**
+	 * Returns this / f.
+	 *
+	 * @throws ArithmeticException
+	 *             if f is zero.
+	 */
+	public Rational divide(Rational f) {
+		return multiply(f.invert());
+	}
+
+	/**
+	 * Returns this / n.
+	 *
+	 * @throws ArithmeticException
+	 *             if n is zero.
+	 */
+	public Rational divide(long n) {
+		return divide(new Rational(n, 1));
+	}
+
+	/**
+	 * Returns the inverse (1/this).
+	 *
+	 * @throws ArithmeticException
+	 *             if this is zero.
+	 */
+	public Rational invert() {
+		if (signum() == 0) {
+			throw new ArithmeticException("Cannot divide by zero.");
+		}
+		if (big == null && nom != Long.MIN_VALUE)
+			return nom < 0 ? new Rational(-denom, -nom, null) : new Rational(denom, nom, null);
+		return new Rational(toBigFraction().invert());
+	}
+
+	/**
+	 * Returns -1, 0 or 1 as this is negative, zero or positive.
+	 */
+	public int signum() {
+		return big == null ? Long.signum(nom) : big.getNominator().signum();
+	}
+
+	/**
+	 * Returns this value as a {@link BigFraction}.
+	 */
+	public BigFraction toBigFraction() {
+		if (big != null)
+			return big;
+		return new BigFraction(BigInteger.valueOf(nom), BigInteger.valueOf(denom));
+	}
+
+	/**
+	 * Returns this value as a {@link Fraction}.
+	 *
+	 * @throws ArithmeticException
+	 *             if the value does not fit into longs.
+	 */
+	public Fraction toFraction() {
+		if (big != null) {
+			throw new ArithmeticException("Rational does not fit into a Fraction.");
+		}
+		return new Fraction(nom, denom);
+	}
+
+	public double decimalValue() {
+		if (big == null)
+			return (nom + 0.0) / denom;
+		return new BigDecimal(big.getNominator())
+				.divide(new BigDecimal(big.getDenominator()), MathContext.DECIMAL64).doubleValue();
+	}
+
+	@Override
+	public int compareTo(Rational o) {
+		if (big == null && o.big == null) {
+			if (denom == o.denom)
+				return Long.compare(nom, o.nom);
+			try {
+				return Long.compare(Math.multiplyExact(nom, o.denom), Math.multiplyExact(o.nom, denom));
+			} catch (ArithmeticException e) {
+				// fall through to BigFraction
+			}
+		}
+		return toBigFraction().compareTo(o.toBigFraction());
+	}
+
+	@Override
+	public String toString() {
+		return big == null ? nom + "/" + denom : big.toString();
+	}
+
+	@Override
+	public int hashCode() {
+		if (big != null)
+			return big.hashCode();
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + (int) (denom ^ (denom >>> 32));
+		result = prime * result + (int) (nom ^ (nom >>> 32));
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null) {
+			return false;
+		}
+		if (!(obj instanceof Rational)) {
+			return false;
+		}
+		Rational other = (Rational) obj;
+		if (big != null || other.big != null) {
+			return big != null && big.equals(other.big);
+		}
+		if (denom != other.denom) {
+			return false;
+		}
+		if (nom != other.nom) {
+			return false;
+		}
+		return true;
+	}
+}
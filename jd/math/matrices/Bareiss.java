@@ -0,0 +1,303 @@
+package jd.math.matrices;
+
+import java.math.BigInteger;
+
+/**
+ *
+ * Fraction-free Gaussian elimination (Bareiss algorithm) on integer matrices.
+ * Every intermediate value is a minor of the input matrix, so the entries stay
+ * bounded by Hadamard's bound instead of growing exponentially, and all
+ * divisions are exact. The elimination runs on longs first and starts over
+ * with BigIntegers as soon as an intermediate value overflows.
+ *
+ * @author Juri Dispan
+ *
+ */
+
+final class Bareiss {
+
+	private Bareiss() {
+		// cannot be instatiated.
+	}
+
+	/**
+	 * The solution of an integer linear system, given as x = numerators /
+	 * denominator.
+	 */
+	static final class Solution {
+		final BigInteger[][] numerators;
+		final BigInteger denominator;
+
+		Solution(BigInteger[][] numerators, BigInteger denominator) {
+			this.numerators = numerators;
+			this.denominator = denominator;
+		}
+	}
+
+	/**
+	 * Calculates the determinant of a quadratic matrix in O(n^3). The argument
+	 * won't be mutated.
+	 */
+	static BigInteger determinant(long[][] a) {
+		try {
+			return BigInteger.valueOf(determinantExact(copy(a)));
+		} catch (ArithmeticException e) {
+			return determinant(toBig(a));
+		}
+	}
+
+	/**
+	 * Calculates the determinant of a quadratic matrix in O(n^3). The argument
+	 * is overwritten by the elimination.
+	 */
+	static BigInteger determinant(BigInteger[][] a) {
+		int n = a.length;
+		if (n == 0)
+			return BigInteger.ONE;
+		boolean negate = false;
+		BigInteger prev = BigInteger.ONE;
+		for (int k = 0; k < n - 1; k++) {
+			if (a[k][k].signum() == 0) {
+				int p = findPivot(a, k);
+				if (p < 0)
+					return BigInteger.ZERO;
+				swap(a, k, p);
+				negate = !negate;
+			}
+			eliminate(a, k, n, prev);
+			prev = a[k][k];
+		}
+		return negate ? a[n - 1][n - 1].negate() : a[n - 1][n - 1];
+	}
+
+	/**
+	 * Solves a*x = b, where b may have several columns. The arguments won't be
+	 * mutated.
+	 *
+	 * @throws ArithmeticException
+	 *             if a is singular.
+	 */
+	static Solution solve(long[][] a, long[][] b) {
+		Solution s;
+		try {
+			s = solveExact(augment(a, b), b.length == 0 ? 0 : b[0].length);
+		} catch (ArithmeticException e) {
+			s = null;
+		}
+		if (s == null)
+			return solve(toBig(a), toBig(b));
+		return s;
+	}
+
+	/**
+	 * Solves a*x = b, where b may have several columns. The arguments won't be
+	 * mutated.
+	 *
+	 * @throws ArithmeticException
+	 *             if a is singular.
+	 */
+	static Solution solve(BigInteger[][] a, BigInteger[][] b) {
+		int n = a.length;
+		int k = b.length == 0 ? 0 : b[0].length;
+		BigInteger[][] h = new BigInteger[n][n + k];
+		for (int i = 0; i < n; i++) {
+			System.arraycopy(a[i], 0, h[i], 0, n);
+			System.arraycopy(b[i], 0, h[i], n, k);
+		}
+		Solution s = solveExact(h, k);
+		if (s == null)
+			throw new ArithmeticException("Matrix is singular.");
+		return s;
+	}
+
+	private static long determinantExact(long[][] a) {
+		int n = a.length;
+		if (n == 0)
+			return 1;
+		long sign = 1;
+		long prev = 1;
+		for (int k = 0; k < n - 1; k++) {
+			if (a[k][k] == 0) {
+				int p = findPivot(a, k);
+				if (p < 0)
+					return 0;
+				swap(a, k, p);
+				sign = -sign;
+			}
+			eliminate(a, k, n, prev);
+			prev = a[k][k];
+		}
+		return Math.multiplyExact(sign, a[n - 1][n - 1]);
+	}
+
+	/**
+	 * Solves the augmented system a = [A|B] with m right hand sides. After the
+	 * forward elimination the last pivot d equals +-det(A) and d*x is
+	 * integral, so the numerators can be computed by an exact fraction-free
+	 * back substitution. Returns null if A is singular, so that the caller can
+	 * retry on BigIntegers (which will report the singularity) without
+	 * distinguishing it from an overflow.
+	 */
+	private static Solution solveExact(long[][] a, int m) {
+		int n = a.length;
+		long prev = 1;
+		for (int k = 0; k < n; k++) {
+			if (a[k][k] == 0) {
+				int p = findPivot(a, k);
+				if (p < 0)
+					return null;
+				swap(a, k, p);
+			}
+			eliminate(a, k, n + m, prev);
+			prev = a[k][k];
+		}
+		long d = prev;
+		BigInteger[][] r = new BigInteger[n][m];
+		long[] num = new long[n];
+		for (int c = 0; c < m; c++) {
+			for (int i = n - 1; i >= 0; i--) {
+				long t = Math.multiplyExact(d, a[i][n + c]);
+				for (int j = i + 1; j < n; j++) {
+					t = Math.subtractExact(t, Math.multiplyExact(a[i][j], num[j]));
+				}
+				num[i] = divideExact(t, a[i][i]);
+			}
+			for (int i = 0; i < n; i++) {
+				r[i][c] = BigInteger.valueOf(num[i]);
+			}
+		}
+		return new Solution(r, BigInteger.valueOf(d));
+	}
+
+	private static Solution solveExact(BigInteger[][] a, int m) {
+		int n = a.length;
+		BigInteger prev = BigInteger.ONE;
+		for (int k = 0; k < n; k++) {
+			if (a[k][k].signum() == 0) {
+				int p = findPivot(a, k);
+				if (p < 0)
+					return null;
+				swap(a, k, p);
+			}
+			eliminate(a, k, n + m, prev);
+			prev = a[k][k];
+		}
+		BigInteger d = prev;
+		BigInteger[][] r = new BigInteger[n][m];
+		for (int c = 0; c < m; c++) {
+			for (int i = n - 1; i >= 0; i--) {
+				BigInteger t = d.multiply(a[i][n + c]);
+				for (int j = i + 1; j < n; j++) {
+					t = t.subtract(a[i][j].multiply(r[j][c]));
+				}
+				r[i][c] = t.divide(a[i][i]);
+			}
+		}
+		return new Solution(r, d);
+	}
+
+	/**
+	 * One Bareiss step: eliminates column k below the pivot a[k][k] in the
+	 * columns k+1 .. cols-1, dividing exactly by the previous pivot.
+	 */
+	private static void eliminate(long[][] a, int k, int cols, long prev) {
+		long[] rowK = a[k];
+		long pivot = rowK[k];
+		for (int i = k + 1; i < a.length; i++) {
+			long[] rowI = a[i];
+			long f = rowI[k];
+			for (int j = k + 1; j < cols; j++) {
+				long t = Math.subtractExact(Math.multiplyExact(rowI[j], pivot), Math.multiplyExact(f, rowK[j]));
+				rowI[j] = divideExact(t, prev);
+			}
+			rowI[k] = 0;
+		}
+	}
+
+	private static void eliminate(BigInteger[][] a, int k, int cols, BigInteger prev) {
+		BigInteger[] rowK = a[k];
+		BigInteger pivot = rowK[k];
+		boolean one = prev.equals(BigInteger.ONE);
+		for (int i = k + 1; i < a.length; i++) {
+			BigInteger[] rowI = a[i];
+			BigInteger f = rowI[k];
+			for (int j = k + 1; j < cols; j++) {
+				BigInteger t = rowI[j].multiply(pivot);
+				if (f.signum() != 0)
+					t = t.subtract(f.multiply(rowK[j]));
+				rowI[j] = one ? t : t.divide(prev);
+			}
+			rowI[k] = BigInteger.ZERO;
+		}
+	}
+
+	/**
+	 * a / b for a division that leaves no remainder. Throws where
+	 * Long.MIN_VALUE / -1 would wrap, so that the caller falls back to
+	 * BigIntegers.
+	 */
+	private static long divideExact(long a, long b) {
+		if (a == Long.MIN_VALUE && b == -1)
+			throw new ArithmeticException("long overflow");
+		return a / b;
+	}
+
+	private static int findPivot(long[][] a, int k) {
+		for (int i = k + 1; i < a.length; i++) {
+			if (a[i][k] != 0)
+				return i;
+		}
+		return -1;
+	}
+
+	private static int findPivot(BigInteger[][] a, int k) {
+		for (int i = k + 1; i < a.length; i++) {
+			if (a[i][k].signum() != 0)
+				return i;
+		}
+		return -1;
+	}
+
+	private static <T> void swap(T[] a, int i, int j) {
+		T tmp = a[i];
+		a[i] = a[j];
+		a[j] = tmp;
+	}
+
+	private static void swap(long[][] a, int i, int j) {
+		long[] tmp = a[i];
+		a[i] = a[j];
+		a[j] = tmp;
+	}
+
+	private static long[][] copy(long[][] a) {
+		long[][] r = new long[a.length][];
+		for (int i = 0; i < a.length; i++) {
+			r[i] = a[i].clone();
+		}
+		return r;
+	}
+
+	private static long[][] augment(long[][] a, long[][] b) {
+		int n = a.length;
+		int m = b.length == 0 ? 0 : b[0].length;
+		long[][] r = new long[n][n + m];
+		for (int i = 0; i < n; i++) {
+			System.arraycopy(a[i], 0, r[i], 0, n);
+			System.arraycopy(b[i], 0, r[i], n, m);
+		}
+		return r;
+	}
+
+	private static BigInteger[][] toBig(long[][] a) {
+		BigInteger[][] r = new BigInteger[a.length][];
+		for (int i = 0; i < a.length; i++) {
+			r[i] = new BigInteger[a[i].length];
+			for (int j = 0; j < a[i].length; j++) {
+				r[i][j] = BigInteger.valueOf(a[i][j]);
+			}
+		}
+		return r;
+	}
+
+}
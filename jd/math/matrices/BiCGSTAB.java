@@ -0,0 +1,79 @@
+package jd.math.matrices;
+
+/**
+ *
+ * The stabilized biconjugate gradient method (BiCGSTAB) with right
+ * preconditioning. Unlike the conjugate gradient method it works for
+ * non-symmetric matrices, at the cost of two products with A per iteration.
+ *
+ * @author Juri Dispan
+ *
+ */
+
+public class BiCGSTAB extends IterativeSolver {
+
+	@Override
+	protected void iterate(LinearOperator a, double[] b, double[] x) {
+		int n = b.length;
+		double[] r = residual(a, b, x, new double[n]);
+		if (report(0, norm(r)))
+			return;
+		double[] rHat = r.clone();
+		double[] p = new double[n];
+		double[] v = new double[n];
+		double[] pHat = new double[n];
+		double[] s = new double[n];
+		double[] sHat = new double[n];
+		double[] t = new double[n];
+		double rho = 1;
+		double alpha = 1;
+		double omega = 1;
+
+		for (int k = 1; k <= getMaxIterations(); k++) {
+			double rhoNew = dot(rHat, r);
+			if (rhoNew == 0) {
+				// r became orthogonal to the shadow residual
+				breakdown();
+				return;
+			}
+			double beta = (rhoNew / rho) * (alpha / omega);
+			for (int i = 0; i < n; i++) {
+				p[i] = r[i] + beta * (p[i] - omega * v[i]);
+			}
+			precondition(p, pHat);
+			a.multiplyInto(pHat, v);
+			double rv = dot(rHat, v);
+			if (rv == 0) {
+				breakdown();
+				return;
+			}
+			alpha = rhoNew / rv;
+			for (int i = 0; i < n; i++) {
+				s[i] = r[i] - alpha * v[i];
+			}
+			double sNorm = norm(s);
+			if (sNorm == 0) {
+				axpy(alpha, pHat, x);
+				report(k, sNorm);
+				return;
+			}
+			precondition(s, sHat);
+			a.multiplyInto(sHat, t);
+			double tt = dot(t, t);
+			omega = tt == 0 ? 0 : dot(t, s) / tt;
+			for (int i = 0; i < n; i++) {
+				x[i] += alpha * pHat[i] + omega * sHat[i];
+				r[i] = s[i] - omega * t[i];
+			}
+			if (report(k, norm(r)))
+				return;
+			if (omega == 0) {
+				// the next beta would divide by omega
+				breakdown();
+				return;
+			}
+			rho = rhoNew;
+		}
+	}
+
+}
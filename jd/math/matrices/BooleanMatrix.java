@@ -0,0 +1,247 @@
+package jd.math.matrices;
+
+import java.util.Arrays;
+
+/**
+ *
+ * A matrix of boolean values, stored as bits: every row is packed into
+ * consecutive longs, 64 entries per word. Products are computed over the
+ * boolean semiring (AND for multiplication, OR for addition) a whole word at a
+ * time, which makes squaring adjacency matrices of graphs cheap.
+ *
+ * @author Juri Dispan
+ *
+ */
+
+public class BooleanMatrix {
+
+	private final int x; // rows
+	private final int y; // columns
+
+	/** Longs per row */
+	private final int words;
+
+	/**
+	 * Entry (i, j) is bit j % 64 of bits[i * words + j / 64]. Bits beyond the
+	 * last column are always zero.
+	 */
+	private final long[] bits;
+
+	/** Creates a matrix with all entries set to false. */
+	public BooleanMatrix(int rows, int cols) {
+		if (rows < 0 || cols < 0)
+			throw new IllegalArgumentException("Illegal matrix dimensions.");
+		this.x = rows;
+		this.y = cols;
+		this.words = (cols + 63) >>> 6;
+		this.bits = new long[Matrix.size(rows, this.words)];
+	}
+
+	/**
+	 * The following format is expected: boolean[rows][columns].
+	 */
+	public BooleanMatrix(boolean[][] values) {
+		this(values.length, values.length == 0 ? 0 : values[0].length);
+		for (int i = 0; i < this.x; i++) {
+			for (int j = 0; j < this.y; j++) {
+				if (values[i][j])
+					this.bits[i * this.words + (j >>> 6)] |= 1L << j;
+			}
+		}
+	}
+
+	/** Returns the value of the matrix at the specified position. */
+	public boolean getValue(int row, int col) {
+		return (this.bits[index(row, col)] & 1L << col) != 0;
+	}
+
+	/**
+	 * Changes the entry of the matrix at the specified position to the
+	 * specified value.
+	 */
+	public void setValue(int row, int col, boolean val) {
+		int k = index(row, col);
+		if (val)
+			this.bits[k] |= 1L << col;
+		else
+			this.bits[k] &= ~(1L << col);
+	}
+
+	private int index(int row, int col) {
+		if (row < 0 || row >= this.x || col < 0 || col >= this.y)
+			throw new IndexOutOfBoundsException("(" + row + ", " + col + ")");
+		return row * this.words + (col >>> 6);
+	}
+
+	/** Returns the number of rows of this matrix. */
+	public int getRows() {
+		return this.x;
+	}
+
+	/** Returns the number of columns of this matrix. */
+	public int getColumns() {
+		return this.y;
+	}
+
+	/** Returns the number of entries that are true. */
+	public long cardinality() {
+		long c = 0;
+		for (long w : this.bits) {
+			c += Long.bitCount(w);
+		}
+		return c;
+	}
+
+	/**
+	 * Returns the entry-wise OR of this matrix and b.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if b's dimensions are illegal.
+	 */
+	public BooleanMatrix or(BooleanMatrix b) {
+		checkSize(b);
+		BooleanMatrix c = new BooleanMatrix(this.x, this.y);
+		for (int k = 0; k < this.bits.length; k++) {
+			c.bits[k] = this.bits[k] | b.bits[k];
+		}
+		return c;
+	}
+
+	/**
+	 * Returns the entry-wise AND of this matrix and b.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if b's dimensions are illegal.
+	 */
+	public BooleanMatrix and(BooleanMatrix b) {
+		checkSize(b);
+		BooleanMatrix c = new BooleanMatrix(this.x, this.y);
+		for (int k = 0; k < this.bits.length; k++) {
+			c.bits[k] = this.bits[k] & b.bits[k];
+		}
+		return c;
+	}
+
+	private void checkSize(BooleanMatrix b) {
+		if (this.x != b.x || this.y != b.y)
+			throw new IllegalArgumentException("Sizes don't match");
+	}
+
+	/**
+	 * Multiply this matrix by an other matrix over the boolean semiring: entry
+	 * (i, j) of the product is true iff there is a k with this(i, k) and b(k,
+	 * j). Uses the method of the Four Russians: for every group of 8 rows of b
+	 * the ORs of all 256 subsets are tabulated once, then every row of the
+	 * product takes one table entry per group, OR-ed in a word at a time.
+	 *
+	 * @param b
+	 *            The matrix to be multiplied on the right side of this.
+	 * @return Matrix product (this*b)
+	 * @throws IllegalArgumentException
+	 *             if b's dimensions are illegal.
+	 */
+	public BooleanMatrix multiply(BooleanMatrix b) {
+		if (this.y != b.x)
+			throw new IllegalArgumentException("Sizes don't match");
+		BooleanMatrix c = new BooleanMatrix(this.x, b.y);
+		int w = b.words;
+		long[] table = new long[256 * w];
+		for (int k = 0; k < this.y; k += 8) {
+			int group = Math.min(8, this.y - k);
+			// table[s] = table[s without its lowest bit t] | row k+t of b
+			for (int s = 1; s < 1 << group; s++) {
+				int t = Integer.numberOfTrailingZeros(s);
+				int prev = (s & (s - 1)) * w;
+				int src = (k + t) * w;
+				for (int j = 0; j < w; j++) {
+					table[s * w + j] = table[prev + j] | b.bits[src + j];
+				}
+			}
+			int word = k >>> 6;
+			int shift = k & 63;
+			for (int i = 0; i < this.x; i++) {
+				int s = (int) (this.bits[i * this.words + word] >>> shift) & 0xFF;
+				if (s == 0)
+					continue;
+				int ci = i * w;
+				int ti = s * w;
+				for (int j = 0; j < w; j++) {
+					c.bits[ci + j] |= table[ti + j];
+				}
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * Returns this*this. For an adjacency matrix, entry (i, j) of the square
+	 * tells whether there is a path of length two from i to j.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the matrix is not quadratic.
+	 */
+	public BooleanMatrix square() {
+		return multiply(this);
+	}
+
+	/** Returns the values of this matrix as boolean[rows][columns]. */
+	public boolean[][] toArray() {
+		boolean[][] r = new boolean[this.x][this.y];
+		for (int i = 0; i < this.x; i++) {
+			for (int j = 0; j < this.y; j++) {
+				r[i][j] = (this.bits[i * this.words + (j >>> 6)] & 1L << j) != 0;
+			}
+		}
+		return r;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < this.x; i++) {
+			for (int j = 0; j < this.y; j++) {
+				s.append(getValue(i, j) ? '1' : '0');
+				if (j < this.y - 1)
+					s.append('\t');
+			}
+			if (i < this.x - 1)
+				s.append('\n');
+		}
+		return s.toString();
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + Arrays.hashCode(bits);
+		result = prime * result + x;
+		result = prime * result + y;
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null) {
+			return false;
+		}
+		if (!(obj instanceof BooleanMatrix)) {
+			return false;
+		}
+		BooleanMatrix other = (BooleanMatrix) obj;
+		if (x != other.x) {
+			return false;
+		}
+		if (y != other.y) {
+			return false;
+		}
+		if (!Arrays.equals(bits, other.bits)) {
+			return false;
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,49 @@
+package jd.math.matrices;
+
+/**
+ *
+ * The (preconditioned) conjugate gradient method. It requires A and the
+ * preconditioner to be symmetric and positive definite, and needs one product
+ * with A and four vectors of memory per iteration.
+ *
+ * @author Juri Dispan
+ *
+ */
+
+public class ConjugateGradient extends IterativeSolver {
+
+	@Override
+	protected void iterate(LinearOperator a, double[] b, double[] x) {
+		int n = b.length;
+		double[] r = residual(a, b, x, new double[n]);
+		if (report(0, norm(r)))
+			return;
+		double[] z = precondition(r, new double[n]);
+		double[] p = z.clone();
+		double[] ap = new double[n];
+		double rz = dot(r, z);
+
+		for (int k = 1; k <= getMaxIterations(); k++) {
+			a.multiplyInto(p, ap);
+			double pap = dot(p, ap);
+			if (pap == 0) {
+				// p is A-orthogonal to itself, A is not positive definite
+				breakdown();
+				return;
+			}
+			double alpha = rz / pap;
+			axpy(alpha, p, x);
+			axpy(-alpha, ap, r);
+			if (report(k, norm(r)))
+				return;
+			precondition(r, z);
+			double rzNew = dot(r, z);
+			double beta = rzNew / rz;
+			for (int i = 0; i < n; i++) {
+				p[i] = z[i] + beta * p[i];
+			}
+			rz = rzNew;
+		}
+	}
+
+}
@@ -1,6 +1,7 @@
 package jd.math.matrices;
 
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 /* 
 							      _            _   _____  _                       
@@ -23,65 +24,335 @@ public class DoubleMatrix {
 
 	private int x; // rows
 	private int y; // columns
-	private double[][] vals;
 
 	/**
-	 * The following format is expected: double[rows][columns].
+	 * Values in row-major order: entry (i, j) is stored at offset + i * stride +
+	 * j.
+	 */
+	private double[] vals;
+	private int offset;
+	private int stride;
+
+	/** Cached LU decomposition, reset whenever this matrix is changed */
+	private LUDecomposition decomposition;
+
+	/**
+	 * The following format is expected: double[rows][columns]. The values are
+	 * copied into the flat storage of the new matrix.
 	 * 
 	 * @param values
 	 *            The values of the new matrix.
 	 */
 	public DoubleMatrix(double[][] values) {
-		this.vals = values.clone();
-		this.x = vals.length;
-		this.y = x == 0 ? 0 : vals[0].length;
+		this.x = values.length;
+		this.y = x == 0 ? 0 : values[0].length;
+		this.vals = new double[size(this.x, this.y)];
+		this.stride = this.y;
+		for (int i = 0; i < this.x; i++) {
+			System.arraycopy(values[i], 0, this.vals, i * this.y, this.y);
+		}
 
 	}
 
 	public DoubleMatrix(int rows, int cols) {
 		this.x = rows;
 		this.y = cols;
-		this.vals = new double[this.x][this.y];
+		this.vals = new double[size(this.x, this.y)];
+		this.stride = cols;
+	}
+
+	/**
+	 * Returns rows * cols, the length of the packed storage of a rows x cols
+	 * matrix.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if a dimension is negative or the matrix has more entries
+	 *             than an array can hold.
+	 */
+	static int size(int rows, int cols) {
+		if (rows < 0 || cols < 0)
+			throw new IllegalArgumentException("Illegal matrix dimensions.");
+		if ((long) rows * cols > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("Matrix is too big.");
+		return rows * cols;
+	}
+
+	/**
+	 * Creates a matrix backed by the given array, which holds the values in
+	 * row-major order. The array is not copied, so changes to it are visible in
+	 * the matrix and vice versa.
+	 * 
+	 * @param rows
+	 *            Number of rows.
+	 * @param cols
+	 *            Number of columns.
+	 * @param values
+	 *            At least rows * cols values, row after row.
+	 */
+	public DoubleMatrix(int rows, int cols, double[] values) {
+		this(rows, cols, values, 0, cols);
+	}
+
+	/**
+	 * Creates a matrix backed by a region of the given array. Entry (i, j) of
+	 * the matrix is values[offset + i * stride + j]. The array is not copied,
+	 * so changes to it are visible in the matrix and vice versa.
+	 * 
+	 * @param rows
+	 *            Number of rows.
+	 * @param cols
+	 *            Number of columns.
+	 * @param values
+	 *            The backing array.
+	 * @param offset
+	 *            Index of entry (0, 0).
+	 * @param stride
+	 *            Distance between the starts of two consecutive rows, at least
+	 *            cols.
+	 * @throws IllegalArgumentException
+	 *             if the region does not fit into the array.
+	 */
+	public DoubleMatrix(int rows, int cols, double[] values, int offset, int stride) {
+		if (rows < 0 || cols < 0 || offset < 0 || stride < cols)
+			throw new IllegalArgumentException("Illegal matrix dimensions.");
+		if (rows > 0 && cols > 0 && offset + (long) (rows - 1) * stride + cols > values.length)
+			throw new IllegalArgumentException("Array is too small.");
+		this.x = rows;
+		this.y = cols;
+		this.vals = values;
+		this.offset = offset;
+		this.stride = stride;
 	}
 
 	public void setValue(int row, int col, double val) {
-		this.vals[row][col] = val;
+		this.vals[index(row, col)] = val;
+		this.decomposition = null;
 	}
 
 	public double getValue(int row, int col) {
-		return this.vals[row][col];
+		return this.vals[index(row, col)];
+	}
+
+	/** Returns the number of rows of this matrix. */
+	public int getRows() {
+		return this.x;
+	}
+
+	/** Returns the number of columns of this matrix. */
+	public int getColumns() {
+		return this.y;
+	}
+
+	private int index(int row, int col) {
+		if (row < 0 || row >= this.x || col < 0 || col >= this.y)
+			throw new IndexOutOfBoundsException("(" + row + ", " + col + ")");
+		return this.offset + row * this.stride + col;
+	}
+
+	/** Backing array, entry (i, j) is at offset() + i * stride() + j. */
+	double[] vals() {
+		return this.vals;
+	}
+
+	/** Index of entry (0, 0) in vals(). */
+	int offset() {
+		return this.offset;
+	}
+
+	/** Distance between the starts of two rows in vals(). */
+	int stride() {
+		return this.stride;
+	}
+
+	/** Returns a deep copy of the values of this matrix. */
+	double[][] toArray() {
+		double[][] r = new double[this.x][this.y];
+		for (int i = 0; i < this.x; i++) {
+			System.arraycopy(this.vals, this.offset + i * this.stride, r[i], 0, this.y);
+		}
+		return r;
 	}
 
 	public DoubleMatrix negate() {
-		DoubleMatrix r = new DoubleMatrix(this.x, this.y);
+		return negateInto(new DoubleMatrix(this.x, this.y));
+	}
+
+	/**
+	 * Negates every entry of this matrix.
+	 * 
+	 * @return this
+	 */
+	public DoubleMatrix negateInPlace() {
+		return negateInto(this);
+	}
+
+	/**
+	 * Stores the negation of this matrix in dest, which may be this matrix
+	 * itself. Any other dest must not share entries with this matrix.
+	 * 
+	 * @return dest
+	 * @throws IllegalArgumentException
+	 *             if dest's dimensions are illegal or dest partially overlaps
+	 *             this matrix.
+	 */
+	public DoubleMatrix negateInto(DoubleMatrix dest) {
+		checkDestination(dest);
+		if (isPacked() && dest.isPacked()) {
+			double[] s = this.vals;
+			double[] d = dest.vals;
+			for (int k = 0, n = this.x * this.y; k < n; k++) {
+				d[k] = -s[k];
+			}
+			dest.decomposition = null;
+			return dest;
+		}
 		for (int i = 0; i < this.x; i++) {
+			int a = this.offset + i * this.stride;
+			int c = dest.offset + i * dest.stride;
 			for (int j = 0; j < this.y; j++) {
-				r.setValue(i, j, -this.vals[i][j]);
+				dest.vals[c + j] = -this.vals[a + j];
 			}
 		}
-		return r;
+		dest.decomposition = null;
+		return dest;
 	}
 
 	public DoubleMatrix add(DoubleMatrix b) {
-		if (this.x != b.x || this.y != b.y)
-			throw new IllegalArgumentException("Sizes don't match");
-		DoubleMatrix r = new DoubleMatrix(this.x, this.y);
+		return addInto(b, new DoubleMatrix(this.x, this.y));
+	}
+
+	/**
+	 * Adds b to this matrix.
+	 * 
+	 * @return this
+	 * @throws IllegalArgumentException
+	 *             if b's dimensions are illegal.
+	 */
+	public DoubleMatrix addInPlace(DoubleMatrix b) {
+		return addInto(b, this);
+	}
+
+	/**
+	 * Stores this + b in dest, which may be one of the summands. Any other dest
+	 * must not share entries with the summands.
+	 * 
+	 * @return dest
+	 * @throws IllegalArgumentException
+	 *             if the dimensions of b or dest are illegal, or if dest
+	 *             partially overlaps a summand.
+	 */
+	public DoubleMatrix addInto(DoubleMatrix b, DoubleMatrix dest) {
+		checkSize(b);
+		checkDestination(dest);
+		b.checkDestination(dest);
+		if (isPacked() && b.isPacked() && dest.isPacked()) {
+			double[] s = this.vals;
+			double[] t = b.vals;
+			double[] d = dest.vals;
+			for (int k = 0, n = this.x * this.y; k < n; k++) {
+				d[k] = s[k] + t[k];
+			}
+			dest.decomposition = null;
+			return dest;
+		}
 		for (int i = 0; i < this.x; i++) {
+			int a = this.offset + i * this.stride;
+			int bi = b.offset + i * b.stride;
+			int c = dest.offset + i * dest.stride;
 			for (int j = 0; j < this.y; j++) {
-				r.setValue(i, j, this.vals[i][j] + b.getValue(i, j));
+				dest.vals[c + j] = this.vals[a + j] + b.vals[bi + j];
 			}
 		}
-		return r;
+		dest.decomposition = null;
+		return dest;
 	}
 
 	public DoubleMatrix multiply(long a) {
-		DoubleMatrix r = new DoubleMatrix(this.x, this.y);
+		return multiplyInto(a, new DoubleMatrix(this.x, this.y));
+	}
+
+	/**
+	 * Multiplies every entry of this matrix by a.
+	 * 
+	 * @return this
+	 */
+	public DoubleMatrix scaleInPlace(long a) {
+		return multiplyInto(a, this);
+	}
+
+	/**
+	 * Stores a * this in dest, which may be this matrix itself. Any other dest
+	 * must not share entries with this matrix.
+	 * 
+	 * @return dest
+	 * @throws IllegalArgumentException
+	 *             if dest's dimensions are illegal or dest partially overlaps
+	 *             this matrix.
+	 */
+	public DoubleMatrix multiplyInto(long a, DoubleMatrix dest) {
+		checkDestination(dest);
+		if (isPacked() && dest.isPacked()) {
+			double f = a;
+			double[] s = this.vals;
+			double[] d = dest.vals;
+			for (int k = 0, n = this.x * this.y; k < n; k++) {
+				d[k] = f * s[k];
+			}
+			dest.decomposition = null;
+			return dest;
+		}
 		for (int i = 0; i < this.x; i++) {
+			int ai = this.offset + i * this.stride;
+			int c = dest.offset + i * dest.stride;
 			for (int j = 0; j < this.y; j++) {
-				r.setValue(i, j, a * this.vals[i][j]);
+				dest.vals[c + j] = a * this.vals[ai + j];
 			}
 		}
-		return r;
+		dest.decomposition = null;
+		return dest;
+	}
+
+	/**
+	 * Whether the values are stored without gaps starting at index 0. The
+	 * element-wise operations then run as a single loop over the whole array
+	 * with the same index for every operand, which is the loop shape the JIT
+	 * compiles to SIMD instructions.
+	 */
+	private boolean isPacked() {
+		return this.offset == 0 && this.stride == this.y;
+	}
+
+	private void checkSize(DoubleMatrix b) {
+		if (this.x != b.x || this.y != b.y)
+			throw new IllegalArgumentException("Sizes don't match");
+	}
+
+	/**
+	 * Checks that dest can take the result of an element-wise operation on this
+	 * matrix. The operations run row by row, so a dest that shares entries with
+	 * this matrix without coinciding with it would overwrite entries before
+	 * they are read.
+	 */
+	private void checkDestination(DoubleMatrix dest) {
+		checkSize(dest);
+		if (this.vals != dest.vals || this.x == 0 || this.y == 0)
+			return;
+		if (this.offset == dest.offset && this.stride == dest.stride)
+			return;
+		long end = this.offset + (long) (this.x - 1) * this.stride + this.y;
+		long destEnd = dest.offset + (long) (this.x - 1) * dest.stride + this.y;
+		if (end <= dest.offset || destEnd <= this.offset)
+			return;
+		if (this.stride == dest.stride) {
+			// entry (i, j) of dest is entry (i + q, j + r) or (i + q + 1, j + r - stride) of this
+			long q = Math.floorDiv(dest.offset - this.offset, (long) this.stride);
+			long r = Math.floorMod(dest.offset - this.offset, (long) this.stride);
+			boolean same = r < this.y && Math.abs(q) < this.x;
+			boolean next = this.stride - r < this.y && Math.abs(q + 1) < this.x;
+			if (!same && !next)
+				return;
+		}
+		throw new IllegalArgumentException("Destination overlaps an operand.");
 	}
 
 	/**
@@ -94,22 +365,186 @@ public class DoubleMatrix {
 	 *             if b's dimensions are illegal.
 	 */
 	public DoubleMatrix multiply(DoubleMatrix b) {
+		return multiplyInto(b, new DoubleMatrix(this.x, b.y));
+	}
+
+	/**
+	 * Multiply this matrix by an other matrix, using all threads of the common
+	 * ForkJoinPool. Small products are computed sequentially.
+	 * 
+	 * @param b
+	 *            The matrix to be multiplied on the right side of this.
+	 * @return Matrix product (this*b)
+	 * @throws IllegalArgumentException
+	 *             if b's dimensions are illegal.
+	 */
+	public DoubleMatrix multiplyParallel(DoubleMatrix b) {
+		return multiplyParallel(b, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Multiply this matrix by an other matrix, splitting the rows of the
+	 * product among the threads of the given pool. Small products are computed
+	 * sequentially, see {@link Matrices#setParallelThreshold(long)}.
+	 * 
+	 * @param b
+	 *            The matrix to be multiplied on the right side of this.
+	 * @param pool
+	 *            The pool to run the computation in.
+	 * @return Matrix product (this*b)
+	 * @throws IllegalArgumentException
+	 *             if b's dimensions are illegal.
+	 */
+	public DoubleMatrix multiplyParallel(DoubleMatrix b, ForkJoinPool pool) {
+		return multiplyParallelInto(b, new DoubleMatrix(this.x, b.y), pool);
+	}
+
+	/**
+	 * Multiply this matrix by an other matrix using Strassen's algorithm, which
+	 * needs O(n^2.81) instead of O(n^3) operations. It pays off for large
+	 * matrices only; products whose smallest dimension is at most
+	 * {@link Matrices#setStrassenThreshold(int)} are multiplied classically. The result may differ from
+	 * {@link #multiply(DoubleMatrix)} by rounding errors.
+	 * 
+	 * @param b
+	 *            The matrix to be multiplied on the right side of this.
+	 * @return Matrix product (this*b)
+	 * @throws IllegalArgumentException
+	 *             if b's dimensions are illegal.
+	 */
+	public DoubleMatrix multiplyStrassen(DoubleMatrix b) {
 		if (this.y != b.x)
 			throw new IllegalArgumentException("Sizes don't match");
-		double[][] c = new double[this.x][b.y];
-		for (int i = 0; i < this.x; i++) {
-			for (int j = 0; j < b.y; j++) {
-				for (int k = 0; k < b.x; k++) {
-					c[i][j] += this.vals[i][k] * b.vals[k][j];
+		DoubleMatrix c = new DoubleMatrix(this.x, b.y);
+		Strassen.multiply(this.x, this.y, b.y, this.vals, this.offset, this.stride, b.vals, b.offset, b.stride, c.vals,
+				0, c.stride);
+		return c;
+	}
+
+	/**
+	 * Stores the product this*b in dest, overwriting its previous values. dest
+	 * must not share its storage with this or b.
+	 * 
+	 * @param b
+	 *            The matrix to be multiplied on the right side of this.
+	 * @param dest
+	 *            The matrix to store the product in.
+	 * @return dest
+	 * @throws IllegalArgumentException
+	 *             if the dimensions of b or dest are illegal, or if dest shares
+	 *             its storage with this or b.
+	 */
+	public DoubleMatrix multiplyInto(DoubleMatrix b, DoubleMatrix dest) {
+		prepareProduct(b, dest);
+		Gemm.multiply(this.x, this.y, b.y, this.vals, this.offset, this.stride, b.vals, b.offset, b.stride, dest.vals,
+				dest.offset, dest.stride);
+		dest.decomposition = null;
+		return dest;
+	}
+
+	/**
+	 * Stores the product this*b in dest like
+	 * {@link #multiplyInto(DoubleMatrix, DoubleMatrix)}, splitting the rows of the product
+	 * among the threads of the given pool.
+	 * 
+	 * @return dest
+	 * @throws IllegalArgumentException
+	 *             if the dimensions of b or dest are illegal, or if dest shares
+	 *             its storage with this or b.
+	 */
+	public DoubleMatrix multiplyParallelInto(DoubleMatrix b, DoubleMatrix dest, ForkJoinPool pool) {
+		prepareProduct(b, dest);
+		Gemm.multiply(this.x, this.y, b.y, this.vals, this.offset, this.stride, b.vals, b.offset, b.stride, dest.vals,
+				dest.offset, dest.stride, pool);
+		dest.decomposition = null;
+		return dest;
+	}
+
+	/** Checks the arguments of a product and clears dest. */
+	private void prepareProduct(DoubleMatrix b, DoubleMatrix dest) {
+		if (this.y != b.x || dest.x != this.x || dest.y != b.y)
+			throw new IllegalArgumentException("Sizes don't match");
+		if (dest.vals == this.vals || dest.vals == b.vals)
+			throw new IllegalArgumentException("Destination must not share storage with a factor.");
+		for (int i = 0; i < dest.x; i++) {
+			int c = dest.offset + i * dest.stride;
+			Arrays.fill(dest.vals, c, c + dest.y, 0);
+		}
+	}
+
+	/**
+	 * Raises this matrix to the k-th power by repeated squaring, which needs
+	 * O(n^3 log k) instead of O(n^3 k) operations. The products are computed in
+	 * a few reused buffers. A negative k raises the inverse to the power -k.
+	 * 
+	 * @param k
+	 *            The exponent. this^0 is the identity matrix.
+	 * @return this^k
+	 * @throws ArithmethicException
+	 *             if the matrix is not quadratic, or if k is negative and the
+	 *             matrix is singular.
+	 */
+	public DoubleMatrix pow(long k) {
+		if (this.x != this.y)
+			throw new ArithmeticException("Matrix is not quadratic.");
+		DoubleMatrix base = k < 0 ? lu().inverse() : copy();
+		DoubleMatrix t = new DoubleMatrix(this.x, this.x);
+		DoubleMatrix r = null;
+		// -Long.MIN_VALUE is read as the unsigned 2^63
+		long e = k < 0 ? -k : k;
+		while (true) {
+			if ((e & 1) != 0) {
+				if (r == null) {
+					r = base.copy();
+				} else {
+					r.multiplyInto(base, t);
+					DoubleMatrix s = r;
+					r = t;
+					t = s;
 				}
 			}
+			e >>>= 1;
+			if (e == 0)
+				break;
+			base.multiplyInto(base, t);
+			DoubleMatrix s = base;
+			base = t;
+			t = s;
+		}
+		if (r == null) {
+			r = new DoubleMatrix(this.x, this.x);
+			for (int i = 0; i < this.x; i++) {
+				r.vals[i * this.x + i] = 1;
+			}
 		}
-		return new DoubleMatrix(c);
+		return r;
 	}
 
 	/**
-	 * Calculates the determinant of the matrix, using the LaPlace procedure. I
-	 * don't recommend using it on big matrices, might lead to stack overflow.
+	 * Calculates the matrix exponential e^this = I + this + this^2/2! + ...
+	 * by scaling and squaring with a Pade approximant, in O(n^3).
+	 * 
+	 * @throws ArithmethicException
+	 *             if the matrix is not quadratic.
+	 */
+	public DoubleMatrix expm() {
+		if (this.x != this.y)
+			throw new ArithmeticException("Matrix is not quadratic.");
+		return MatrixExponential.expm(this);
+	}
+
+	/** Returns a copy of this matrix with its own packed storage. */
+	private DoubleMatrix copy() {
+		DoubleMatrix c = new DoubleMatrix(this.x, this.y);
+		for (int i = 0; i < this.x; i++) {
+			System.arraycopy(this.vals, this.offset + i * this.stride, c.vals, i * this.y, this.y);
+		}
+		return c;
+	}
+
+	/**
+	 * Calculates the determinant of the matrix. Matrices up to 3x3 are handled
+	 * directly, bigger ones by an LU decomposition in O(n^3).
 	 * 
 	 * @throws ArithmethicException
 	 *             if the matrix is not quadratic.
@@ -119,37 +554,74 @@ public class DoubleMatrix {
 		if (this.x != this.y)
 			throw new ArithmeticException("Matrix is not quadratic.");
 		if (this.x == 1)
-			return this.vals[0][0];
+			return getValue(0, 0);
 		if (this.x == 2)
-			return this.vals[0][0] * this.vals[1][1] - this.vals[0][1] * this.vals[1][0];
+			return getValue(0, 0) * getValue(1, 1) - getValue(0, 1) * getValue(1, 0);
 		if (this.x == 3)
-			return this.vals[0][0] * this.vals[1][1] * this.vals[2][2]
-					+ this.vals[0][1] * this.vals[1][2] * this.vals[2][0]
-					+ this.vals[0][2] * this.vals[1][0] * this.vals[2][1]
-					- this.vals[0][2] * this.vals[1][1] * this.vals[2][0]
-					- this.vals[0][1] * this.vals[1][0] * this.vals[2][2]
-					- this.vals[0][0] * this.vals[1][2] * this.vals[2][1];
-
-		double det = 0;
-
-		for (int i = 0, sign = 1; i < this.x; i++, sign *= -1) {
-			if (this.vals[0][i] == 0)
-				continue;
-			double[][] tmp = new double[this.x - 1][this.x - 1];
-			for (int j = 1; j < this.x; j++) {
-				for (int k = 0, l = 0; k < this.x; k++) {
-					if (k == i)
-						continue;
-					tmp[j - 1][l] = this.vals[j][k];
-					l++;
-				}
-			}
-			DoubleMatrix t = new DoubleMatrix(tmp);
-			det += sign * this.vals[0][i] * t.determinant();
+			return getValue(0, 0) * getValue(1, 1) * getValue(2, 2)
+					+ getValue(0, 1) * getValue(1, 2) * getValue(2, 0)
+					+ getValue(0, 2) * getValue(1, 0) * getValue(2, 1)
+					- getValue(0, 2) * getValue(1, 1) * getValue(2, 0)
+					- getValue(0, 1) * getValue(1, 0) * getValue(2, 2)
+					- getValue(0, 0) * getValue(1, 2) * getValue(2, 1);
+
+		return lu().determinant();
+
+	}
+
+	/**
+	 * Returns the LU decomposition of this matrix. Use it to calculate
+	 * determinant, solutions and inverse from a single factorization. The
+	 * decomposition is computed on the first call and cached until this matrix
+	 * is changed through one of its methods. Changes made directly to a backing
+	 * array passed to the constructor are not detected.
+	 * 
+	 * @throws ArithmethicException
+	 *             if the matrix is not quadratic.
+	 */
+	public LUDecomposition lu() {
+		LUDecomposition d = this.decomposition;
+		if (d == null) {
+			d = new LUDecomposition(this);
+			this.decomposition = d;
 		}
+		return d;
+	}
 
-		return det;
+	/**
+	 * Solves this * y = b for y, where b may have any number of columns. The
+	 * LU decomposition of this matrix is computed once and reused by later
+	 * calls, so every further solve costs O(n^2) per column.
+	 * 
+	 * @param b
+	 *            A matrix with as many rows as this one. Every column is
+	 *            treated as a right hand side of its own.
+	 * @return The matrix y that solves (this * y) = b.
+	 * @throws IllegalArgumentException
+	 *             If this matrix is not quadratic or b's dimensions are
+	 *             illegal.
+	 * @throws ArithmeticException
+	 *             If this matrix is singular.
+	 */
+	public DoubleMatrix solve(DoubleMatrix b) {
+		if (this.x != this.y || b.x != this.y) {
+			throw new IllegalArgumentException("Illegal matrix dimensions.");
+		}
+		return lu().solve(b);
+	}
 
+	/**
+	 * Reduces this matrix to reduced row echelon form by Gauss-Jordan
+	 * elimination with partial pivoting. The result provides rank, null space
+	 * and inverse from the same O(n^3) pass.
+	 */
+	public GaussJordan gaussJordan() {
+		return new GaussJordan(this);
+	}
+
+	/** Returns the rank of this matrix. */
+	public int rank() {
+		return gaussJordan().getRank();
 	}
 
 	/**
@@ -168,72 +640,38 @@ public class DoubleMatrix {
 		if (this.x != this.y || x.x != this.y || x.y != 1) {
 			throw new IllegalArgumentException("Illegal matrix dimensions.");
 		}
-
-		DoubleMatrix A = new DoubleMatrix(this.vals);
-		DoubleMatrix b = new DoubleMatrix(x.vals);
-
-		for (int i = 0; i < A.y; i++) {
-			int max = i;
-			for (int j = i + 1; j < A.y; j++) {
-				if (Math.abs(A.vals[j][i]) > Math.abs(A.vals[max][i])) {
-					max = j;
-				}
-			}
-
-			A.swapRows(i, max);
-			b.swapRows(i, max);
-
-			if (A.vals[i][i] == 0.0)
-				throw new ArithmeticException("Matrix is singular.");
-
-			for (int j = i + 1; j < A.y; j++) {
-				b.vals[j][0] -= b.vals[i][0] * A.vals[j][i] / A.vals[i][i];
-			}
-
-			for (int j = i + 1; j < A.y; j++) {
-				for (int k = i + 1; k < A.y; k++) {
-					A.vals[j][k] -= A.vals[i][k] * A.vals[i][j] / A.vals[i][i];
-				}
-				A.vals[j][i] = 0;
-			}
-			// A.reduceWith(b);
-		}
-
-		DoubleMatrix lsg = new DoubleMatrix(A.y, 1);
-		for (int i = A.y - 1; i >= 0; i--) {
-			double t = 0;
-			for (int j = i + 1; j < A.y; j++) {
-				t += A.vals[i][j] * lsg.vals[j][0];
-			}
-			lsg.vals[i][0] = (b.vals[i][0] - t) / A.vals[i][i];
-		}
-		return lsg;
-	}
-
-	private void swapRows(int a, int b) {
-		double[] tmp = this.vals[a];
-		this.vals[a] = this.vals[b];
-		this.vals[b] = tmp;
+		return lu().solve(x);
 	}
 
 	@Override
 	public String toString() {
-		String s = "";
+		StringBuilder s = new StringBuilder();
 		for (int i = 0; i < this.x; i++) {
+			int a = this.offset + i * this.stride;
 			for (int j = 0; j < this.y; j++) {
-				s += j == this.y - 1 ? this.vals[i][j] : this.vals[i][j] + "\t";
+				s.append(this.vals[a + j]);
+				if (j < this.y - 1)
+					s.append('\t');
 			}
 			if (i < this.x - 1)
-				s += "\n";
+				s.append('\n');
 		}
-		return s;
+		return s.toString();
 	}
 
 	@Override
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + Arrays.deepHashCode(vals);
+		int h = 1;
+		for (int i = 0; i < this.x; i++) {
+			int r = 1;
+			for (int j = 0, a = this.offset + i * this.stride; j < this.y; j++) {
+				r = prime * r + Double.hashCode(this.vals[a + j]);
+			}
+			h = prime * h + r;
+		}
+		result = prime * result + h;
 		result = prime * result + x;
 		result = prime * result + y;
 		return result;
@@ -251,15 +689,21 @@ public class DoubleMatrix {
 			return false;
 		}
 		DoubleMatrix other = (DoubleMatrix) obj;
-		if (!Arrays.deepEquals(vals, other.vals)) {
-			return false;
-		}
 		if (x != other.x) {
 			return false;
 		}
 		if (y != other.y) {
 			return false;
 		}
+		for (int i = 0; i < this.x; i++) {
+			int a = this.offset + i * this.stride;
+			int b = other.offset + i * other.stride;
+			for (int j = 0; j < this.y; j++) {
+				if (Double.doubleToLongBits(this.vals[a + j]) != Double.doubleToLongBits(other.vals[b + j])) {
+					return false;
+				}
+			}
+		}
 		return true;
 	}
 
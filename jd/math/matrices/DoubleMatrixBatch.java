@@ -0,0 +1,441 @@
+package jd.math.matrices;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ *
+ * A batch of many small matrices of the same shape, such as 3x3 or 4x4
+ * transforms, stored as a structure of arrays: entry (i, j) of all matrices is
+ * kept in one array indexed by the number of the matrix. Every operation runs
+ * over the whole batch with the matrix number in the innermost loop, which
+ * has no branches and uses the same index for every array, so the JIT
+ * compiles it to SIMD instructions. Determinants and solutions of matrices up
+ * to 4x4 (solutions up to 3x3) are computed in closed form.
+ *
+ * @author Juri Dispan
+ *
+ */
+
+public class DoubleMatrixBatch {
+
+	/** Number of matrices processed at a time, small enough for the L1 cache */
+	private static final int CHUNK = 1024;
+
+	/** Matrices per task of the parallel operations */
+	private static final int GRAIN = 1 << 14;
+
+	private final int x; // rows
+	private final int y; // columns
+	private final int count;
+
+	/** Entry (i, j) of matrix t is vals[i * y + j][t] */
+	private final double[][] vals;
+
+	/**
+	 * Creates a batch of count matrices with all entries set to zero.
+	 *
+	 * @param rows
+	 *            Number of rows of every matrix.
+	 * @param cols
+	 *            Number of columns of every matrix.
+	 * @param count
+	 *            Number of matrices.
+	 */
+	public DoubleMatrixBatch(int rows, int cols, int count) {
+		if (rows <= 0 || cols <= 0 || count < 0)
+			throw new IllegalArgumentException("Illegal matrix dimensions.");
+		this.x = rows;
+		this.y = cols;
+		this.count = count;
+		this.vals = new double[DoubleMatrix.size(rows, cols)][count];
+	}
+
+	/** Returns the number of rows of every matrix. */
+	public int getRows() {
+		return this.x;
+	}
+
+	/** Returns the number of columns of every matrix. */
+	public int getColumns() {
+		return this.y;
+	}
+
+	/** Returns the number of matrices in this batch. */
+	public int getCount() {
+		return this.count;
+	}
+
+	/** Returns entry (row, col) of the given matrix. */
+	public double getValue(int matrix, int row, int col) {
+		return this.vals[index(row, col)][matrix];
+	}
+
+	/** Changes entry (row, col) of the given matrix to the specified value. */
+	public void setValue(int matrix, int row, int col, double val) {
+		this.vals[index(row, col)][matrix] = val;
+	}
+
+	private int index(int row, int col) {
+		if (row < 0 || row >= this.x || col < 0 || col >= this.y)
+			throw new IndexOutOfBoundsException("(" + row + ", " + col + ")");
+		return row * this.y + col;
+	}
+
+	/** Returns a copy of the given matrix. */
+	public DoubleMatrix get(int matrix) {
+		if (matrix < 0 || matrix >= this.count)
+			throw new IndexOutOfBoundsException("" + matrix);
+		double[] d = new double[this.x * this.y];
+		for (int k = 0; k < d.length; k++) {
+			d[k] = this.vals[k][matrix];
+		}
+		return new DoubleMatrix(this.x, this.y, d);
+	}
+
+	/**
+	 * Overwrites the given matrix of this batch with the values of m.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if m's dimensions are illegal.
+	 */
+	public void set(int matrix, DoubleMatrix m) {
+		if (m.getRows() != this.x || m.getColumns() != this.y)
+			throw new IllegalArgumentException("Sizes don't match");
+		if (matrix < 0 || matrix >= this.count)
+			throw new IndexOutOfBoundsException("" + matrix);
+		for (int i = 0; i < this.x; i++) {
+			for (int j = 0; j < this.y; j++) {
+				this.vals[i * this.y + j][matrix] = m.getValue(i, j);
+			}
+		}
+	}
+
+	/**
+	 * Multiplies every matrix of this batch by the matrix with the same number
+	 * in b.
+	 *
+	 * @param b
+	 *            The matrices to be multiplied on the right side.
+	 * @return A batch of the products.
+	 * @throws IllegalArgumentException
+	 *             if b's dimensions or count are illegal.
+	 */
+	public DoubleMatrixBatch multiply(DoubleMatrixBatch b) {
+		return multiplyInto(b, new DoubleMatrixBatch(this.x, b.y, this.count));
+	}
+
+	/**
+	 * Like {@link #multiply(DoubleMatrixBatch)}, splitting the batch among the
+	 * threads of the given pool.
+	 */
+	public DoubleMatrixBatch multiplyParallel(DoubleMatrixBatch b, ForkJoinPool pool) {
+		DoubleMatrixBatch dest = new DoubleMatrixBatch(this.x, b.y, this.count);
+		checkProduct(b, dest);
+		pool.invoke(new Gemm.RowTask((from, to) -> multiply(b, dest, from, to), 0, this.count, GRAIN));
+		return dest;
+	}
+
+	/**
+	 * Stores the products of the matrices of this batch and b in dest, which
+	 * must be a different batch.
+	 *
+	 * @return dest
+	 * @throws IllegalArgumentException
+	 *             if the dimensions or counts of b or dest are illegal.
+	 */
+	public DoubleMatrixBatch multiplyInto(DoubleMatrixBatch b, DoubleMatrixBatch dest) {
+		checkProduct(b, dest);
+		multiply(b, dest, 0, this.count);
+		return dest;
+	}
+
+	private void checkProduct(DoubleMatrixBatch b, DoubleMatrixBatch dest) {
+		if (this.y != b.x || dest.x != this.x || dest.y != b.y || b.count != this.count || dest.count != this.count)
+			throw new IllegalArgumentException("Sizes don't match");
+		if (dest == this || dest == b)
+			throw new IllegalArgumentException("Destination must not be a factor.");
+	}
+
+	private void multiply(DoubleMatrixBatch b, DoubleMatrixBatch dest, int from, int to) {
+		int m = this.y;
+		int p = b.y;
+		for (int s = from; s < to; s += CHUNK) {
+			int e = Math.min(s + CHUNK, to);
+			for (int i = 0; i < this.x; i++) {
+				for (int j = 0; j < p; j++) {
+					double[] c = dest.vals[i * p + j];
+					double[] a0 = this.vals[i * m];
+					double[] b0 = b.vals[j];
+					for (int t = s; t < e; t++) {
+						c[t] = a0[t] * b0[t];
+					}
+					for (int k = 1; k < m; k++) {
+						double[] ak = this.vals[i * m + k];
+						double[] bk = b.vals[k * p + j];
+						for (int t = s; t < e; t++) {
+							c[t] += ak[t] * bk[t];
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Calculates the determinants of all matrices.
+	 *
+	 * @return The determinant of matrix t at index t.
+	 * @throws ArithmethicException
+	 *             if the matrices are not quadratic.
+	 */
+	public double[] determinants() {
+		return determinantsInto(new double[this.count]);
+	}
+
+	/**
+	 * Stores the determinants of all matrices in dest.
+	 *
+	 * @return dest
+	 * @throws ArithmethicException
+	 *             if the matrices are not quadratic.
+	 * @throws IllegalArgumentException
+	 *             if dest's length is illegal.
+	 */
+	public double[] determinantsInto(double[] dest) {
+		checkDeterminants(dest);
+		determinants(dest, 0, this.count);
+		return dest;
+	}
+
+	/**
+	 * Like {@link #determinants()}, splitting the batch among the threads of
+	 * the given pool.
+	 */
+	public double[] determinantsParallel(ForkJoinPool pool) {
+		double[] dest = new double[this.count];
+		checkDeterminants(dest);
+		pool.invoke(new Gemm.RowTask((from, to) -> determinants(dest, from, to), 0, this.count, GRAIN));
+		return dest;
+	}
+
+	private void checkDeterminants(double[] dest) {
+		if (this.x != this.y)
+			throw new ArithmeticException("Matrix is not quadratic.");
+		if (dest.length != this.count)
+			throw new IllegalArgumentException("Sizes don't match");
+	}
+
+	private void determinants(double[] d, int from, int to) {
+		double[][] a = this.vals;
+		switch (this.x) {
+		case 1: {
+			System.arraycopy(a[0], from, d, from, to - from);
+			return;
+		}
+		case 2: {
+			double[] a00 = a[0], a01 = a[1], a10 = a[2], a11 = a[3];
+			for (int t = from; t < to; t++) {
+				d[t] = a00[t] * a11[t] - a01[t] * a10[t];
+			}
+			return;
+		}
+		case 3: {
+			double[] a00 = a[0], a01 = a[1], a02 = a[2];
+			double[] a10 = a[3], a11 = a[4], a12 = a[5];
+			double[] a20 = a[6], a21 = a[7], a22 = a[8];
+			for (int t = from; t < to; t++) {
+				d[t] = a00[t] * (a11[t] * a22[t] - a12[t] * a21[t])
+						- a01[t] * (a10[t] * a22[t] - a12[t] * a20[t])
+						+ a02[t] * (a10[t] * a21[t] - a11[t] * a20[t]);
+			}
+			return;
+		}
+		case 4: {
+			double[] a00 = a[0], a01 = a[1], a02 = a[2], a03 = a[3];
+			double[] a10 = a[4], a11 = a[5], a12 = a[6], a13 = a[7];
+			double[] a20 = a[8], a21 = a[9], a22 = a[10], a23 = a[11];
+			double[] a30 = a[12], a31 = a[13], a32 = a[14], a33 = a[15];
+			for (int t = from; t < to; t++) {
+				// 2x2 minors of the last two rows
+				double s0 = a20[t] * a31[t] - a21[t] * a30[t];
+				double s1 = a20[t] * a32[t] - a22[t] * a30[t];
+				double s2 = a20[t] * a33[t] - a23[t] * a30[t];
+				double s3 = a21[t] * a32[t] - a22[t] * a31[t];
+				double s4 = a21[t] * a33[t] - a23[t] * a31[t];
+				double s5 = a22[t] * a33[t] - a23[t] * a32[t];
+				d[t] = a00[t] * (a11[t] * s5 - a12[t] * s4 + a13[t] * s3)
+						- a01[t] * (a10[t] * s5 - a12[t] * s2 + a13[t] * s1)
+						+ a02[t] * (a10[t] * s4 - a11[t] * s2 + a13[t] * s0)
+						- a03[t] * (a10[t] * s3 - a11[t] * s1 + a12[t] * s0);
+			}
+			return;
+		}
+		default:
+			double[][] m = new double[this.x][this.x];
+			for (int t = from; t < to; t++) {
+				load(t, m, 0, this);
+				d[t] = eliminate(m, this.x);
+			}
+		}
+	}
+
+	/**
+	 * Solves A * X = B for every matrix A of this batch and the matrix B with
+	 * the same number in b. There is no check for singular matrices; their
+	 * solutions contain infinite or NaN values.
+	 *
+	 * @param b
+	 *            The right hand sides, with as many rows as the matrices of
+	 *            this batch.
+	 * @return A batch of the solutions X.
+	 * @throws ArithmethicException
+	 *             if the matrices are not quadratic.
+	 * @throws IllegalArgumentException
+	 *             if b's dimensions or count are illegal.
+	 */
+	public DoubleMatrixBatch solve(DoubleMatrixBatch b) {
+		DoubleMatrixBatch dest = new DoubleMatrixBatch(this.x, b.y, this.count);
+		checkSolve(b);
+		solve(b, dest, 0, this.count);
+		return dest;
+	}
+
+	/**
+	 * Like {@link #solve(DoubleMatrixBatch)}, splitting the batch among the
+	 * threads of the given pool.
+	 */
+	public DoubleMatrixBatch solveParallel(DoubleMatrixBatch b, ForkJoinPool pool) {
+		DoubleMatrixBatch dest = new DoubleMatrixBatch(this.x, b.y, this.count);
+		checkSolve(b);
+		pool.invoke(new Gemm.RowTask((from, to) -> solve(b, dest, from, to), 0, this.count, GRAIN));
+		return dest;
+	}
+
+	private void checkSolve(DoubleMatrixBatch b) {
+		if (this.x != this.y)
+			throw new ArithmeticException("Matrix is not quadratic.");
+		if (b.x != this.x || b.count != this.count)
+			throw new IllegalArgumentException("Sizes don't match");
+	}
+
+	private void solve(DoubleMatrixBatch b, DoubleMatrixBatch dest, int from, int to) {
+		double[][] a = this.vals;
+		int p = b.y;
+		switch (this.x) {
+		case 1: {
+			for (int j = 0; j < p; j++) {
+				double[] b0 = b.vals[j], x0 = dest.vals[j];
+				for (int t = from; t < to; t++) {
+					x0[t] = b0[t] / a[0][t];
+				}
+			}
+			return;
+		}
+		case 2: {
+			// Cramer's rule
+			double[] a00 = a[0], a01 = a[1], a10 = a[2], a11 = a[3];
+			for (int j = 0; j < p; j++) {
+				double[] b0 = b.vals[j], b1 = b.vals[p + j];
+				double[] x0 = dest.vals[j], x1 = dest.vals[p + j];
+				for (int t = from; t < to; t++) {
+					double f = 1 / (a00[t] * a11[t] - a01[t] * a10[t]);
+					x0[t] = (b0[t] * a11[t] - a01[t] * b1[t]) * f;
+					x1[t] = (a00[t] * b1[t] - b0[t] * a10[t]) * f;
+				}
+			}
+			return;
+		}
+		case 3: {
+			// x = adj(A) * b / det(A)
+			double[] a00 = a[0], a01 = a[1], a02 = a[2];
+			double[] a10 = a[3], a11 = a[4], a12 = a[5];
+			double[] a20 = a[6], a21 = a[7], a22 = a[8];
+			for (int j = 0; j < p; j++) {
+				double[] b0 = b.vals[j], b1 = b.vals[p + j], b2 = b.vals[2 * p + j];
+				double[] x0 = dest.vals[j], x1 = dest.vals[p + j], x2 = dest.vals[2 * p + j];
+				for (int t = from; t < to; t++) {
+					double c00 = a11[t] * a22[t] - a12[t] * a21[t];
+					double c01 = a12[t] * a20[t] - a10[t] * a22[t];
+					double c02 = a10[t] * a21[t] - a11[t] * a20[t];
+					double f = 1 / (a00[t] * c00 + a01[t] * c01 + a02[t] * c02);
+					double c10 = a02[t] * a21[t] - a01[t] * a22[t];
+					double c11 = a00[t] * a22[t] - a02[t] * a20[t];
+					double c12 = a01[t] * a20[t] - a00[t] * a21[t];
+					double c20 = a01[t] * a12[t] - a02[t] * a11[t];
+					double c21 = a02[t] * a10[t] - a00[t] * a12[t];
+					double c22 = a00[t] * a11[t] - a01[t] * a10[t];
+					x0[t] = (c00 * b0[t] + c10 * b1[t] + c20 * b2[t]) * f;
+					x1[t] = (c01 * b0[t] + c11 * b1[t] + c21 * b2[t]) * f;
+					x2[t] = (c02 * b0[t] + c12 * b1[t] + c22 * b2[t]) * f;
+				}
+			}
+			return;
+		}
+		default:
+			int n = this.x;
+			double[][] m = new double[n][n + p];
+			for (int t = from; t < to; t++) {
+				load(t, m, 0, this);
+				load(t, m, n, b);
+				eliminate(m, n);
+				// back substitution
+				for (int j = 0; j < p; j++) {
+					for (int i = n - 1; i >= 0; i--) {
+						double s = m[i][n + j];
+						for (int k = i + 1; k < n; k++) {
+							s -= m[i][k] * m[k][n + j];
+						}
+						m[i][n + j] = s / m[i][i];
+						dest.vals[i * p + j][t] = m[i][n + j];
+					}
+				}
+			}
+		}
+	}
+
+	/** Copies matrix t of src into the columns from col on of m. */
+	private static void load(int t, double[][] m, int col, DoubleMatrixBatch src) {
+		for (int i = 0; i < src.x; i++) {
+			for (int j = 0; j < src.y; j++) {
+				m[i][col + j] = src.vals[i * src.y + j][t];
+			}
+		}
+	}
+
+	/**
+	 * Reduces the first n columns of m to upper triangular form by Gaussian
+	 * elimination with partial pivoting, applying the same steps to the
+	 * remaining columns.
+	 *
+	 * @return The determinant of the leading nxn block.
+	 */
+	private static double eliminate(double[][] m, int n) {
+		double det = 1;
+		int w = m[0].length;
+		for (int k = 0; k < n; k++) {
+			int piv = k;
+			for (int i = k + 1; i < n; i++) {
+				if (Math.abs(m[i][k]) > Math.abs(m[piv][k]))
+					piv = i;
+			}
+			if (piv != k) {
+				double[] tmp = m[piv];
+				m[piv] = m[k];
+				m[k] = tmp;
+				det = -det;
+			}
+			double d = m[k][k];
+			det *= d;
+			if (d == 0)
+				continue;
+			for (int i = k + 1; i < n; i++) {
+				double f = m[i][k] / d;
+				for (int j = k; j < w; j++) {
+					m[i][j] -= f * m[k][j];
+				}
+			}
+		}
+		return det;
+	}
+
+}
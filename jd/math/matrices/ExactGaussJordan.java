@@ -0,0 +1,184 @@
+package jd.math.matrices;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import jd.math.fractions.BigFraction;
+
+/**
+ *
+ * Exact Gauss-Jordan elimination on an integer Matrix A of any shape. A single
+ * fraction-free pass (the Bareiss variant of Gauss-Jordan) reduces [A | I] to
+ * d * [R | E] with BigIntegers, where R is the reduced row echelon form of A,
+ * E*A = R and d is the last pivot. Every division in the elimination is exact
+ * and the intermediate values are minors of [A | I], so they grow only
+ * polynomially. Rank, pivot columns, an integral null space basis and (for
+ * invertible A) the inverse E are read off the result.
+ *
+ * @author Juri Dispan
+ *
+ */
+
+public class ExactGaussJordan {
+
+	private final int rows;
+	private final int cols;
+
+	/** d * [R | E] */
+	private final BigInteger[][] a;
+
+	/** The common denominator d, positive */
+	private final BigInteger d;
+
+	/** Pivot column of every non-zero row of R */
+	private final int[] pivots;
+
+	private final int rank;
+
+	/**
+	 * Reduces the matrix in the argument, which won't be mutated.
+	 */
+	public ExactGaussJordan(Matrix m) {
+		this.rows = m.getRows();
+		this.cols = m.getColumns();
+		int width = cols + rows;
+		this.a = new BigInteger[rows][width];
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < cols; j++) {
+				a[i][j] = BigInteger.valueOf(m.getValue(i, j));
+			}
+			for (int j = cols; j < width; j++) {
+				a[i][j] = j - cols == i ? BigInteger.ONE : BigInteger.ZERO;
+			}
+		}
+
+		int[] piv = new int[Math.min(rows, cols)];
+		BigInteger prev = BigInteger.ONE;
+		int r = 0;
+		for (int k = 0; k < cols && r < rows; k++) {
+			int p = r;
+			while (p < rows && a[p][k].signum() == 0) {
+				p++;
+			}
+			if (p == rows)
+				continue;
+			BigInteger[] tmp = a[p];
+			a[p] = a[r];
+			a[r] = tmp;
+
+			BigInteger[] rowR = a[r];
+			BigInteger pivot = rowR[k];
+			for (int i = 0; i < rows; i++) {
+				if (i == r)
+					continue;
+				BigInteger[] rowI = a[i];
+				BigInteger f = rowI[k];
+				for (int j = 0; j < width; j++) {
+					if (j == k)
+						continue;
+					BigInteger t = rowI[j].multiply(pivot);
+					if (f.signum() != 0 && rowR[j].signum() != 0)
+						t = t.subtract(f.multiply(rowR[j]));
+					rowI[j] = t.divide(prev);
+				}
+				rowI[k] = BigInteger.ZERO;
+			}
+			prev = pivot;
+			piv[r++] = k;
+		}
+		this.rank = r;
+		this.pivots = Arrays.copyOf(piv, r);
+
+		// earlier pivots have been scaled along to prev; normalize the sign of d
+		if (prev.signum() < 0) {
+			for (BigInteger[] row : a) {
+				for (int j = 0; j < width; j++) {
+					row[j] = row[j].negate();
+				}
+			}
+			prev = prev.negate();
+		}
+		this.d = prev;
+	}
+
+	/** Returns the rank of the matrix. */
+	public int getRank() {
+		return rank;
+	}
+
+	/** Returns the pivot columns of the reduced row echelon form. */
+	public int[] getPivotColumns() {
+		return pivots.clone();
+	}
+
+	/**
+	 * Returns the reduced row echelon form of the matrix.
+	 *
+	 * @return An array of the format BigFraction[rows][columns].
+	 */
+	public BigFraction[][] getReducedRowEchelonForm() {
+		return divide(0, cols);
+	}
+
+	/**
+	 * Returns an integral basis of the null space {x | A*x = 0}. Every basis
+	 * vector is divided by the gcd of its entries.
+	 *
+	 * @return A matrix whose columns are the basis vectors. It has cols - rank
+	 *         columns, so it is empty if the columns of A are independent.
+	 * @throws ArithmeticException
+	 *             if an entry of the basis does not fit into a long.
+	 */
+	public Matrix getNullSpace() {
+		int dim = cols - rank;
+		Matrix n = new Matrix(cols, dim);
+		boolean[] isPivot = new boolean[cols];
+		for (int p : pivots) {
+			isPivot[p] = true;
+		}
+		BigInteger[] v = new BigInteger[cols];
+		for (int f = 0, c = 0; f < cols; f++) {
+			if (isPivot[f])
+				continue;
+			Arrays.fill(v, BigInteger.ZERO);
+			v[f] = d;
+			BigInteger g = d;
+			for (int i = 0; i < rank; i++) {
+				v[pivots[i]] = a[i][f].negate();
+				g = g.gcd(a[i][f]);
+			}
+			for (int j = 0; j < cols; j++) {
+				n.setValue(j, c, v[j].divide(g).longValueExact());
+			}
+			c++;
+		}
+		return n;
+	}
+
+	/**
+	 * Returns the inverse of the matrix.
+	 *
+	 * @return An array of the format BigFraction[rows][columns].
+	 * @throws ArithmeticException
+	 *             if the matrix is not quadratic or singular.
+	 */
+	public BigFraction[][] getInverse() {
+		if (rows != cols)
+			throw new ArithmeticException("Matrix is not quadratic.");
+		if (rank < rows)
+			throw new ArithmeticException("Matrix is singular.");
+		return divide(cols, cols + rows);
+	}
+
+	/** Returns the columns from .. to-1 of [R | E]. */
+	private BigFraction[][] divide(int from, int to) {
+		BigFraction[][] r = new BigFraction[rows][to - from];
+		for (int i = 0; i < rows; i++) {
+			for (int j = from; j < to; j++) {
+				r[i][j - from] = new BigFraction(a[i][j], d);
+			}
+		}
+		return r;
+	}
+
+}
@@ -0,0 +1,134 @@
+package jd.math.matrices;
+
+import java.util.Arrays;
+
+/**
+ *
+ * The generalized minimal residual method with restarts, GMRES(m), using right
+ * preconditioning. It works for any non-singular matrix and minimizes the
+ * residual over a Krylov subspace of growing dimension, which is restarted
+ * after m iterations to bound the memory to m+1 vectors.
+ *
+ * @author Juri Dispan
+ *
+ */
+
+public class GMRES extends IterativeSolver {
+
+	/**
+	 * Relative size below which a column of the Hessenberg matrix counts as
+	 * zero, a few units of roundoff of the Gram-Schmidt process.
+	 */
+	private static final double BREAKDOWN = 1e-14;
+
+	private final int restart;
+
+	/** Creates a GMRES(30) solver. */
+	public GMRES() {
+		this(30);
+	}
+
+	/**
+	 * @param restart
+	 *            Number of iterations after which the Krylov subspace is
+	 *            restarted.
+	 */
+	public GMRES(int restart) {
+		if (restart <= 0)
+			throw new IllegalArgumentException("Restart must be positive.");
+		this.restart = restart;
+	}
+
+	@Override
+	protected void iterate(LinearOperator a, double[] b, double[] x) {
+		int n = b.length;
+		int m = restart;
+		double[][] v = new double[m + 1][];
+		double[][] h = new double[m + 1][m];
+		double[] cs = new double[m];
+		double[] sn = new double[m];
+		double[] g = new double[m + 1];
+		double[] r = new double[n];
+		double[] z = new double[n];
+
+		int k = 0;
+		while (true) {
+			residual(a, b, x, r);
+			double beta = norm(r);
+			if (report(k, beta) || k >= getMaxIterations() || beta == 0)
+				return;
+			v[0] = new double[n];
+			for (int i = 0; i < n; i++) {
+				v[0][i] = r[i] / beta;
+			}
+			Arrays.fill(g, 0);
+			g[0] = beta;
+
+			int j = 0;
+			boolean done = false;
+			while (j < m && k < getMaxIterations() && !done) {
+				precondition(v[j], z);
+				double[] w = a.multiplyInto(z, new double[n]);
+				// the rotations keep the column norm, which is |A * z|
+				double wNorm = norm(w);
+				// modified Gram-Schmidt
+				for (int i = 0; i <= j; i++) {
+					double hij = dot(w, v[i]);
+					h[i][j] = hij;
+					axpy(-hij, v[i], w);
+				}
+				double hNext = norm(w);
+				if (hNext != 0) {
+					for (int i = 0; i < n; i++) {
+						w[i] /= hNext;
+					}
+				}
+				v[j + 1] = w;
+
+				for (int i = 0; i < j; i++) {
+					double t = cs[i] * h[i][j] + sn[i] * h[i + 1][j];
+					h[i + 1][j] = -sn[i] * h[i][j] + cs[i] * h[i + 1][j];
+					h[i][j] = t;
+				}
+				double rad = Math.hypot(h[j][j], hNext);
+				if (!(rad > BREAKDOWN * wNorm)) {
+					// the new column is zero up to roundoff (or not finite), the
+					// matrix is singular on the Krylov subspace and the
+					// triangular solve would divide by zero: keep the first j
+					// columns
+					breakdown();
+					done = true;
+					break;
+				}
+				cs[j] = h[j][j] / rad;
+				sn[j] = hNext / rad;
+				h[j][j] = rad;
+				g[j + 1] = -sn[j] * g[j];
+				g[j] = cs[j] * g[j];
+
+				j++;
+				k++;
+				done = report(k, Math.abs(g[j])) || hNext == 0;
+			}
+
+			// solve the triangular system h * y = g and update x += M^-1 * V * y
+			double[] y = new double[j];
+			for (int i = j - 1; i >= 0; i--) {
+				double s = g[i];
+				for (int l = i + 1; l < j; l++) {
+					s -= h[i][l] * y[l];
+				}
+				y[i] = s / h[i][i];
+			}
+			double[] u = new double[n];
+			for (int i = 0; i < j; i++) {
+				axpy(y[i], v[i], u);
+			}
+			axpy(1, precondition(u, z), x);
+			if (done || k >= getMaxIterations()) {
+				return;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,154 @@
+package jd.math.matrices;
+
+import java.util.Arrays;
+
+/**
+ *
+ * Gauss-Jordan elimination with partial pivoting on a DoubleMatrix A of any
+ * shape. A single O(n^3) pass reduces [A | I] to [R | E], where R is the
+ * reduced row echelon form of A and E*A = R. Rank, pivot columns, null space
+ * and (for invertible A) the inverse E are all read off this result. Entries
+ * whose absolute value is below a tolerance relative to the largest entry of A
+ * are treated as zero.
+ *
+ * @author Juri Dispan
+ *
+ */
+
+public class GaussJordan {
+
+	private final int rows;
+	private final int cols;
+
+	/** [R | E], row-major */
+	private final double[][] a;
+
+	/** Pivot column of every non-zero row of R */
+	private final int[] pivots;
+
+	private final int rank;
+
+	/**
+	 * Reduces the matrix in the argument, which won't be mutated.
+	 */
+	public GaussJordan(DoubleMatrix m) {
+		this.rows = m.getRows();
+		this.cols = m.getColumns();
+		int width = cols + rows;
+		this.a = new double[rows][width];
+		double max = 0;
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < cols; j++) {
+				double v = m.getValue(i, j);
+				a[i][j] = v;
+				max = Math.max(max, Math.abs(v));
+			}
+			a[i][cols + i] = 1;
+		}
+		double eps = Math.max(rows, cols) * Math.ulp(max);
+
+		int[] piv = new int[Math.min(rows, cols)];
+		int r = 0;
+		for (int k = 0; k < cols && r < rows; k++) {
+			int p = r;
+			for (int i = r + 1; i < rows; i++) {
+				if (Math.abs(a[i][k]) > Math.abs(a[p][k]))
+					p = i;
+			}
+			if (Math.abs(a[p][k]) <= eps) {
+				for (int i = r; i < rows; i++) {
+					a[i][k] = 0;
+				}
+				continue;
+			}
+			double[] tmp = a[p];
+			a[p] = a[r];
+			a[r] = tmp;
+
+			double[] rowR = a[r];
+			double pivot = rowR[k];
+			for (int j = k; j < width; j++) {
+				rowR[j] /= pivot;
+			}
+			rowR[k] = 1;
+			for (int i = 0; i < rows; i++) {
+				if (i == r)
+					continue;
+				double[] rowI = a[i];
+				double f = rowI[k];
+				if (f == 0)
+					continue;
+				for (int j = k; j < width; j++) {
+					rowI[j] -= f * rowR[j];
+				}
+				rowI[k] = 0;
+			}
+			piv[r++] = k;
+		}
+		this.rank = r;
+		this.pivots = Arrays.copyOf(piv, r);
+	}
+
+	/** Returns the rank of the matrix. */
+	public int getRank() {
+		return rank;
+	}
+
+	/** Returns the pivot columns of the reduced row echelon form. */
+	public int[] getPivotColumns() {
+		return pivots.clone();
+	}
+
+	/** Returns the reduced row echelon form of the matrix. */
+	public DoubleMatrix getReducedRowEchelonForm() {
+		double[] r = new double[rows * cols];
+		for (int i = 0; i < rows; i++) {
+			System.arraycopy(a[i], 0, r, i * cols, cols);
+		}
+		return new DoubleMatrix(rows, cols, r);
+	}
+
+	/**
+	 * Returns a basis of the null space {x | A*x = 0}.
+	 *
+	 * @return A matrix whose columns are the basis vectors. It has cols - rank
+	 *         columns, so it is empty if the columns of A are independent.
+	 */
+	public DoubleMatrix getNullSpace() {
+		int dim = cols - rank;
+		double[] n = new double[cols * dim];
+		boolean[] isPivot = new boolean[cols];
+		for (int p : pivots) {
+			isPivot[p] = true;
+		}
+		for (int f = 0, c = 0; f < cols; f++) {
+			if (isPivot[f])
+				continue;
+			n[f * dim + c] = 1;
+			for (int i = 0; i < rank; i++) {
+				n[pivots[i] * dim + c] = -a[i][f];
+			}
+			c++;
+		}
+		return new DoubleMatrix(cols, dim, n);
+	}
+
+	/**
+	 * Returns the inverse of the matrix.
+	 *
+	 * @throws ArithmeticException
+	 *             if the matrix is not quadratic or singular.
+	 */
+	public DoubleMatrix getInverse() {
+		if (rows != cols)
+			throw new ArithmeticException("Matrix is not quadratic.");
+		if (rank < rows)
+			throw new ArithmeticException("Matrix is singular.");
+		double[] r = new double[rows * rows];
+		for (int i = 0; i < rows; i++) {
+			System.arraycopy(a[i], cols, r, i * rows, rows);
+		}
+		return new DoubleMatrix(rows, rows, r);
+	}
+
+}
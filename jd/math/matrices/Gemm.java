@@ -0,0 +1,457 @@
+package jd.math.matrices;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ *
+ * Cache-blocked matrix multiplication kernels shared by {@link DoubleMatrix},
+ * {@link Matrix} and {@link Matrices}. The product is accumulated tile by tile
+ * in i-k-j order, so the innermost loop runs along rows of b and c instead of
+ * striding down the columns of b, and every tile of b is reused while it is
+ * still in the cache.
+ *
+ * @author Juri Dispan
+ *
+ */
+
+final class Gemm {
+
+	/** Edge length of the tiles, see {@link Matrices#setBlockSize(int)} */
+	static volatile int blockSize = 64;
+
+	/**
+	 * Number of multiply-adds below which a product is never split, see
+	 * {@link Matrices#setParallelThreshold(long)}
+	 */
+	static volatile long parallelThreshold = 1L << 21;
+
+	private Gemm() {
+		// cannot be instatiated.
+	}
+
+	/**
+	 * Adds a*b to c, where a is an ixj, b a jxk and c an ixk array.
+	 */
+	static void multiply(double[][] a, double[][] b, double[][] c) {
+		multiply(a, b, c, 0, a.length);
+	}
+
+	/**
+	 * Adds a*b to c like {@link #multiply(double[][], double[][], double[][])}, splitting
+	 * the rows of c among the threads of the pool. Products smaller than
+	 * {@link #parallelThreshold} are computed sequentially.
+	 */
+	static void multiply(double[][] a, double[][] b, double[][] c, ForkJoinPool pool) {
+		int p = c.length == 0 ? 0 : c[0].length;
+		if (!worthSplitting(a.length, b.length, p))
+			multiply(a, b, c, 0, a.length);
+		else
+			pool.invoke(new RowTask((from, to) -> multiply(a, b, c, from, to), 0, a.length, grain(a.length, pool)));
+	}
+
+	/**
+	 * Adds rows from .. to-1 of a*b to the corresponding rows of c.
+	 */
+	private static void multiply(double[][] a, double[][] b, double[][] c, int from, int to) {
+		int m = b.length;
+		int p = c.length == 0 ? 0 : c[0].length;
+		int bs = blockSize;
+		for (int ii = from; ii < to; ii += bs) {
+			int iEnd = Math.min(ii + bs, to);
+			for (int kk = 0; kk < m; kk += bs) {
+				int kEnd = Math.min(kk + bs, m);
+				for (int jj = 0; jj < p; jj += bs) {
+					int jEnd = Math.min(jj + bs, p);
+					for (int i = ii; i < iEnd; i++) {
+						double[] ai = a[i];
+						double[] ci = c[i];
+						for (int k = kk; k < kEnd; k++) {
+							double aik = ai[k];
+							double[] bk = b[k];
+							for (int j = jj; j < jEnd; j++) {
+								ci[j] += aik * bk[j];
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds a*b to c, where a is an ixj, b a jxk and c an ixk array.
+	 */
+	static void multiply(long[][] a, long[][] b, long[][] c) {
+		multiply(a, b, c, 0, a.length);
+	}
+
+	/**
+	 * Adds a*b to c like {@link #multiply(long[][], long[][], long[][])}, splitting
+	 * the rows of c among the threads of the pool. Products smaller than
+	 * {@link #parallelThreshold} are computed sequentially.
+	 */
+	static void multiply(long[][] a, long[][] b, long[][] c, ForkJoinPool pool) {
+		int p = c.length == 0 ? 0 : c[0].length;
+		if (!worthSplitting(a.length, b.length, p))
+			multiply(a, b, c, 0, a.length);
+		else
+			pool.invoke(new RowTask((from, to) -> multiply(a, b, c, from, to), 0, a.length, grain(a.length, pool)));
+	}
+
+	/**
+	 * Adds rows from .. to-1 of a*b to the corresponding rows of c.
+	 */
+	private static void multiply(long[][] a, long[][] b, long[][] c, int from, int to) {
+		int m = b.length;
+		int p = c.length == 0 ? 0 : c[0].length;
+		int bs = blockSize;
+		for (int ii = from; ii < to; ii += bs) {
+			int iEnd = Math.min(ii + bs, to);
+			for (int kk = 0; kk < m; kk += bs) {
+				int kEnd = Math.min(kk + bs, m);
+				for (int jj = 0; jj < p; jj += bs) {
+					int jEnd = Math.min(jj + bs, p);
+					for (int i = ii; i < iEnd; i++) {
+						long[] ai = a[i];
+						long[] ci = c[i];
+						for (int k = kk; k < kEnd; k++) {
+							long aik = ai[k];
+							long[] bk = b[k];
+							for (int j = jj; j < jEnd; j++) {
+								ci[j] += aik * bk[j];
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds a*b to c, where a is an ixj, b a jxk and c an ixk array.
+	 */
+	static void multiply(int[][] a, int[][] b, int[][] c) {
+		multiply(a, b, c, 0, a.length);
+	}
+
+	/**
+	 * Adds a*b to c like {@link #multiply(int[][], int[][], int[][])}, splitting
+	 * the rows of c among the threads of the pool. Products smaller than
+	 * {@link #parallelThreshold} are computed sequentially.
+	 */
+	static void multiply(int[][] a, int[][] b, int[][] c, ForkJoinPool pool) {
+		int p = c.length == 0 ? 0 : c[0].length;
+		if (!worthSplitting(a.length, b.length, p))
+			multiply(a, b, c, 0, a.length);
+		else
+			pool.invoke(new RowTask((from, to) -> multiply(a, b, c, from, to), 0, a.length, grain(a.length, pool)));
+	}
+
+	/**
+	 * Adds rows from .. to-1 of a*b to the corresponding rows of c.
+	 */
+	private static void multiply(int[][] a, int[][] b, int[][] c, int from, int to) {
+		int m = b.length;
+		int p = c.length == 0 ? 0 : c[0].length;
+		int bs = blockSize;
+		for (int ii = from; ii < to; ii += bs) {
+			int iEnd = Math.min(ii + bs, to);
+			for (int kk = 0; kk < m; kk += bs) {
+				int kEnd = Math.min(kk + bs, m);
+				for (int jj = 0; jj < p; jj += bs) {
+					int jEnd = Math.min(jj + bs, p);
+					for (int i = ii; i < iEnd; i++) {
+						int[] ai = a[i];
+						int[] ci = c[i];
+						for (int k = kk; k < kEnd; k++) {
+							int aik = ai[k];
+							int[] bk = b[k];
+							for (int j = jj; j < jEnd; j++) {
+								ci[j] += aik * bk[j];
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds a*b to c, where a is an nxm, b an mxp and c an nxp matrix, each
+	 * stored row-major in a flat array starting at the given offset, with the
+	 * given distance between the starts of two consecutive rows.
+	 */
+	static void multiply(int n, int m, int p, double[] a, int aOff, int lda, double[] b, int bOff, int ldb, double[] c,
+			int cOff, int ldc) {
+		multiply(m, p, a, aOff, lda, b, bOff, ldb, c, cOff, ldc, 0, n);
+	}
+
+	/**
+	 * Adds a*b to c like {@link #multiply(int, int, int, double[], int, int, double[], int, int, double[], int, int)},
+	 * splitting the rows of c among the threads of the pool.
+	 */
+	static void multiply(int n, int m, int p, double[] a, int aOff, int lda, double[] b, int bOff, int ldb, double[] c,
+			int cOff, int ldc, ForkJoinPool pool) {
+		if (!worthSplitting(n, m, p))
+			multiply(m, p, a, aOff, lda, b, bOff, ldb, c, cOff, ldc, 0, n);
+		else
+			pool.invoke(new RowTask((from, to) -> multiply(m, p, a, aOff, lda, b, bOff, ldb, c, cOff, ldc, from, to), 0,
+					n, grain(n, pool)));
+	}
+
+	/**
+	 * Kernel for the flat layout. The current tile of c and of b are copied
+	 * into separate row arrays first, so that the innermost loop has the same
+	 * shape as in the two-dimensional kernel and can be vectorized by the JIT.
+	 */
+	private static void multiply(int m, int p, double[] a, int aOff, int lda, double[] b, int bOff, int ldb, double[] c,
+			int cOff, int ldc, int from, int to) {
+		int bs = blockSize;
+		// no bigger than needed, small products are common
+		int tw = Math.min(bs, p);
+		double[][] cTile = new double[Math.min(bs, to - from)][tw];
+		double[][] bTile = new double[Math.min(bs, m)][tw];
+		for (int ii = from; ii < to; ii += bs) {
+			int iEnd = Math.min(ii + bs, to);
+			for (int jj = 0; jj < p; jj += bs) {
+				int w = Math.min(jj + bs, p) - jj;
+				for (int i = ii; i < iEnd; i++) {
+					System.arraycopy(c, cOff + i * ldc + jj, cTile[i - ii], 0, w);
+				}
+				for (int kk = 0; kk < m; kk += bs) {
+					int kEnd = Math.min(kk + bs, m);
+					for (int k = kk; k < kEnd; k++) {
+						System.arraycopy(b, bOff + k * ldb + jj, bTile[k - kk], 0, w);
+					}
+					for (int i = ii; i < iEnd; i++) {
+						int ai = aOff + i * lda;
+						double[] ci = cTile[i - ii];
+						for (int k = kk; k < kEnd; k++) {
+							double aik = a[ai + k];
+							double[] bk = bTile[k - kk];
+							for (int j = 0; j < w; j++) {
+								ci[j] += aik * bk[j];
+							}
+						}
+					}
+				}
+				for (int i = ii; i < iEnd; i++) {
+					System.arraycopy(cTile[i - ii], 0, c, cOff + i * ldc + jj, w);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds a*b to c, where a is an nxm, b an mxp and c an nxp matrix, each
+	 * stored row-major in a flat array starting at the given offset, with the
+	 * given distance between the starts of two consecutive rows.
+	 */
+	static void multiply(int n, int m, int p, long[] a, int aOff, int lda, long[] b, int bOff, int ldb, long[] c,
+			int cOff, int ldc) {
+		multiply(m, p, a, aOff, lda, b, bOff, ldb, c, cOff, ldc, 0, n);
+	}
+
+	/**
+	 * Adds a*b to c like {@link #multiply(int, int, int, long[], int, int, long[], int, int, long[], int, int)},
+	 * splitting the rows of c among the threads of the pool.
+	 */
+	static void multiply(int n, int m, int p, long[] a, int aOff, int lda, long[] b, int bOff, int ldb, long[] c,
+			int cOff, int ldc, ForkJoinPool pool) {
+		if (!worthSplitting(n, m, p))
+			multiply(m, p, a, aOff, lda, b, bOff, ldb, c, cOff, ldc, 0, n);
+		else
+			pool.invoke(new RowTask((from, to) -> multiply(m, p, a, aOff, lda, b, bOff, ldb, c, cOff, ldc, from, to), 0,
+					n, grain(n, pool)));
+	}
+
+	/**
+	 * Kernel for the flat layout. The current tile of c and of b are copied
+	 * into separate row arrays first, so that the innermost loop has the same
+	 * shape as in the two-dimensional kernel and can be vectorized by the JIT.
+	 */
+	private static void multiply(int m, int p, long[] a, int aOff, int lda, long[] b, int bOff, int ldb, long[] c,
+			int cOff, int ldc, int from, int to) {
+		int bs = blockSize;
+		// no bigger than needed, small products are common
+		int tw = Math.min(bs, p);
+		long[][] cTile = new long[Math.min(bs, to - from)][tw];
+		long[][] bTile = new long[Math.min(bs, m)][tw];
+		for (int ii = from; ii < to; ii += bs) {
+			int iEnd = Math.min(ii + bs, to);
+			for (int jj = 0; jj < p; jj += bs) {
+				int w = Math.min(jj + bs, p) - jj;
+				for (int i = ii; i < iEnd; i++) {
+					System.arraycopy(c, cOff + i * ldc + jj, cTile[i - ii], 0, w);
+				}
+				for (int kk = 0; kk < m; kk += bs) {
+					int kEnd = Math.min(kk + bs, m);
+					for (int k = kk; k < kEnd; k++) {
+						System.arraycopy(b, bOff + k * ldb + jj, bTile[k - kk], 0, w);
+					}
+					for (int i = ii; i < iEnd; i++) {
+						int ai = aOff + i * lda;
+						long[] ci = cTile[i - ii];
+						for (int k = kk; k < kEnd; k++) {
+							long aik = a[ai + k];
+							long[] bk = bTile[k - kk];
+							for (int j = 0; j < w; j++) {
+								ci[j] += aik * bk[j];
+							}
+						}
+					}
+				}
+				for (int i = ii; i < iEnd; i++) {
+					System.arraycopy(cTile[i - ii], 0, c, cOff + i * ldc + jj, w);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stores a*b in c, which must be cleared, with the layout of
+	 * {@link #multiply(int, int, int, long[], int, int, long[], int, int, long[], int, int)}.
+	 * Unless mode is WRAP, entries whose exact value does not fit into a long
+	 * throw an ArithmeticException (CHECKED) or are clamped (SATURATING). If
+	 * the largest factors show that no partial sum can overflow, the ordinary
+	 * kernel runs without any checks.
+	 */
+	static void multiply(int n, int m, int p, long[] a, int aOff, int lda, long[] b, int bOff, int ldb, long[] c,
+			int cOff, int ldc, OverflowMode mode) {
+		// |a(i, k)| <= 2^ba, |b(k, j)| <= 2^bb, so |c(i, j)| <= 2^(ba + bb + bm)
+		int ba = magnitude(n, m, a, aOff, lda);
+		int bb = magnitude(m, p, b, bOff, ldb);
+		int bm = 64 - Long.numberOfLeadingZeros(m);
+		if (mode == OverflowMode.WRAP || ba + bb + bm <= 62) {
+			multiply(m, p, a, aOff, lda, b, bOff, ldb, c, cOff, ldc, 0, n);
+			return;
+		}
+		long[] row = new long[p];
+		long[] hi = new long[p];
+		boolean[] wide = new boolean[p];
+		for (int i = 0; i < n; i++) {
+			int ai = aOff + i * lda;
+			Arrays.fill(row, 0);
+			try {
+				for (int k = 0; k < m; k++) {
+					long aik = a[ai + k];
+					int bk = bOff + k * ldb;
+					for (int j = 0; j < p; j++) {
+						row[j] = Math.addExact(row[j], Math.multiplyExact(aik, b[bk + j]));
+					}
+				}
+			} catch (ArithmeticException e) {
+				// a partial sum may overflow although the result fits, so
+				// recompute the row with 128 bit sums (hi, row). Entries whose
+				// sums do not even fit into 128 bits are marked as wide.
+				Arrays.fill(row, 0);
+				Arrays.fill(hi, 0);
+				Arrays.fill(wide, false);
+				for (int k = 0; k < m; k++) {
+					long aik = a[ai + k];
+					int bk = bOff + k * ldb;
+					for (int j = 0; j < p; j++) {
+						if (wide[j])
+							continue;
+						long lo = aik * b[bk + j];
+						long s = row[j] + lo;
+						long carry = Long.compareUnsigned(s, lo) < 0 ? 1 : 0;
+						try {
+							hi[j] = Math.addExact(hi[j], Math.multiplyHigh(aik, b[bk + j]) + carry);
+						} catch (ArithmeticException e2) {
+							wide[j] = true;
+						}
+						row[j] = s;
+					}
+				}
+				for (int j = 0; j < p; j++) {
+					if (!wide[j] && hi[j] == row[j] >> 63)
+						continue;
+					if (mode == OverflowMode.CHECKED)
+						throw new ArithmeticException("long overflow");
+					int sign = wide[j] ? exactProduct(m, a, ai, b, bOff + j, ldb).signum() : Long.signum(hi[j]);
+					row[j] = sign < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+				}
+			}
+			System.arraycopy(row, 0, c, cOff + i * ldc, p);
+		}
+	}
+
+	/**
+	 * The exact sum of a[ai + k] * b[bj + k * ldb] over k < m, for the entries
+	 * whose sum does not even fit into 128 bits.
+	 */
+	private static BigInteger exactProduct(int m, long[] a, int ai, long[] b, int bj, int ldb) {
+		BigInteger s = BigInteger.ZERO;
+		for (int k = 0; k < m; k++) {
+			s = s.add(BigInteger.valueOf(a[ai + k]).multiply(BigInteger.valueOf(b[bj + k * ldb])));
+		}
+		return s;
+	}
+
+	/** Smallest e with |v| <= 2^e for all entries v of the nxm matrix a. */
+	private static int magnitude(int n, int m, long[] a, int aOff, int lda) {
+		long bits = 0;
+		for (int i = 0; i < n; i++) {
+			int ai = aOff + i * lda;
+			for (int j = 0; j < m; j++) {
+				long v = a[ai + j];
+				bits |= v ^ (v >> 63);
+			}
+		}
+		return 64 - Long.numberOfLeadingZeros(bits);
+	}
+
+	private static boolean worthSplitting(int n, int m, int p) {
+		return n > 1 && (long) n * m * p >= parallelThreshold;
+	}
+
+	/**
+	 * Number of rows a single task works on: a few tasks per thread for load
+	 * balancing, but never less than one tile.
+	 */
+	private static int grain(int rows, ForkJoinPool pool) {
+		return Math.max(Math.min(blockSize, rows), rows / (4 * pool.getParallelism()));
+	}
+
+	/** Computes a range of rows (or of other independent indices). */
+	@FunctionalInterface
+	interface RowKernel {
+		void compute(int from, int to);
+	}
+
+	/**
+	 * Splits a range of rows in halves until it is no bigger than the grain,
+	 * then runs the kernel on it.
+	 */
+	static final class RowTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final RowKernel kernel;
+		private final int from;
+		private final int to;
+		private final int grain;
+
+		RowTask(RowKernel kernel, int from, int to, int grain) {
+			this.kernel = kernel;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= grain) {
+				kernel.compute(from, to);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new RowTask(kernel, from, mid, grain), new RowTask(kernel, mid, to, grain));
+		}
+	}
+
+}
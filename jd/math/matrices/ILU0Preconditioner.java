@@ -0,0 +1,91 @@
+package jd.math.matrices;
+
+import java.util.Arrays;
+
+/**
+ *
+ * The incomplete LU factorization without fill-in, ILU(0). L and U get the
+ * same sparsity pattern as the matrix itself, so the factorization costs about
+ * as much memory as the matrix and applying it as much time as a
+ * multiplication, while it usually reduces the number of iterations far more
+ * than the Jacobi preconditioner.
+ *
+ * @author Juri Dispan
+ *
+ */
+
+public class ILU0Preconditioner implements Preconditioner {
+
+	private final int n;
+	private final int[] rowStart;
+	private final int[] colIndex;
+
+	/** L (below the diagonal, unit diagonal implied) and U, packed together */
+	private final double[] lu;
+
+	/** Position of the diagonal entry of every row in lu */
+	private final int[] diagonal;
+
+	/**
+	 * @param a
+	 *            A quadratic matrix with non-zero entries on its diagonal.
+	 * @throws ArithmeticException
+	 *             if the matrix is not quadratic or a zero pivot occurs.
+	 */
+	public ILU0Preconditioner(SparseDoubleMatrix a) {
+		if (a.getRows() != a.getColumns())
+			throw new ArithmeticException("Matrix is not quadratic.");
+		this.n = a.getRows();
+		this.rowStart = a.rowStart();
+		this.colIndex = a.colIndex();
+		this.lu = a.values().clone();
+		this.diagonal = new int[n];
+
+		int[] pos = new int[n];
+		Arrays.fill(pos, -1);
+		for (int i = 0; i < n; i++) {
+			int start = rowStart[i];
+			int end = rowStart[i + 1];
+			for (int k = start; k < end; k++) {
+				pos[colIndex[k]] = k;
+			}
+			int k = start;
+			for (; k < end && colIndex[k] < i; k++) {
+				int c = colIndex[k];
+				double l = lu[k] / lu[diagonal[c]];
+				lu[k] = l;
+				for (int m = diagonal[c] + 1; m < rowStart[c + 1]; m++) {
+					int p = pos[colIndex[m]];
+					if (p >= 0)
+						lu[p] -= l * lu[m];
+				}
+			}
+			if (k == end || colIndex[k] != i || lu[k] == 0)
+				throw new ArithmeticException("Zero pivot in row " + i + ".");
+			diagonal[i] = k;
+			for (k = start; k < end; k++) {
+				pos[colIndex[k]] = -1;
+			}
+		}
+	}
+
+	@Override
+	public double[] applyInto(double[] r, double[] dest) {
+		for (int i = 0; i < n; i++) {
+			double s = r[i];
+			for (int k = rowStart[i]; k < diagonal[i]; k++) {
+				s -= lu[k] * dest[colIndex[k]];
+			}
+			dest[i] = s;
+		}
+		for (int i = n - 1; i >= 0; i--) {
+			double s = dest[i];
+			for (int k = diagonal[i] + 1; k < rowStart[i + 1]; k++) {
+				s -= lu[k] * dest[colIndex[k]];
+			}
+			dest[i] = s / lu[diagonal[i]];
+		}
+		return dest;
+	}
+
+}
@@ -0,0 +1,217 @@
+package jd.math.matrices;
+
+/**
+ *
+ * Base class of the Krylov subspace solvers for linear systems A*x = b. They
+ * only need products of A with vectors, so they work on any
+ * {@link LinearOperator}, e.g. a {@link SparseDoubleMatrix}, in O(nonzeros)
+ * time and O(n) memory per iteration. The iteration stops as soon as the
+ * residual norm |b - A*x| drops to tolerance * |b|, or after the maximum
+ * number of iterations. A solver keeps the statistics of its last run, so an
+ * instance must not be used by several threads at the same time.
+ *
+ * @author Juri Dispan
+ *
+ */
+
+public abstract class IterativeSolver {
+
+	/**
+	 * Gets notified after every iteration of a solver.
+	 */
+	@FunctionalInterface
+	public interface ResidualListener {
+
+		/**
+		 * @param iteration
+		 *            Number of the iteration, 0 for the initial guess.
+		 * @param residualNorm
+		 *            The norm of the residual after that iteration.
+		 */
+		void iterationDone(int iteration, double residualNorm);
+	}
+
+	private double tolerance = 1e-10;
+	private int maxIterations = 1000;
+	private Preconditioner preconditioner;
+	private ResidualListener listener;
+
+	private double threshold;
+	private int iterations;
+	private double residualNorm;
+	private boolean converged;
+	private boolean brokeDown;
+
+	/**
+	 * Sets the relative tolerance. The default is 1e-10.
+	 */
+	public void setTolerance(double tolerance) {
+		if (!(tolerance >= 0))
+			throw new IllegalArgumentException("Tolerance must not be negative.");
+		this.tolerance = tolerance;
+	}
+
+	public double getTolerance() {
+		return tolerance;
+	}
+
+	/**
+	 * Sets the maximum number of iterations. The default is 1000.
+	 */
+	public void setMaxIterations(int maxIterations) {
+		if (maxIterations < 0)
+			throw new IllegalArgumentException("Maximum number of iterations must not be negative.");
+		this.maxIterations = maxIterations;
+	}
+
+	public int getMaxIterations() {
+		return maxIterations;
+	}
+
+	/**
+	 * Sets the preconditioner, or null for none (the default).
+	 */
+	public void setPreconditioner(Preconditioner preconditioner) {
+		this.preconditioner = preconditioner;
+	}
+
+	public Preconditioner getPreconditioner() {
+		return preconditioner;
+	}
+
+	/**
+	 * Sets the listener that gets the residual norm after every iteration, or
+	 * null for none (the default).
+	 */
+	public void setResidualListener(ResidualListener listener) {
+		this.listener = listener;
+	}
+
+	/** Returns the number of iterations of the last run. */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/** Returns the residual norm reached by the last run. */
+	public double getResidualNorm() {
+		return residualNorm;
+	}
+
+	/** Returns whether the last run reached the tolerance. */
+	public boolean hasConverged() {
+		return converged;
+	}
+
+	/**
+	 * Returns whether the last run stopped early because the method broke
+	 * down, i.e. one of its recurrences would have divided by zero. The
+	 * returned x is then the last iterate before the breakdown, and
+	 * {@link #getResidualNorm()} its residual norm.
+	 */
+	public boolean hasBrokenDown() {
+		return brokeDown;
+	}
+
+	/**
+	 * Solves A*x = b, starting with x = 0.
+	 *
+	 * @return The approximate solution x. Check {@link #hasConverged()} to see
+	 *         whether it is within the tolerance.
+	 * @throws IllegalArgumentException
+	 *             if the dimensions of a or b are illegal.
+	 */
+	public double[] solve(LinearOperator a, double[] b) {
+		return solve(a, b, new double[a.getColumns()]);
+	}
+
+	/**
+	 * Solves A*x = b, starting with the given guess x0. x0 won't be mutated.
+	 *
+	 * @return The approximate solution x. Check {@link #hasConverged()} to see
+	 *         whether it is within the tolerance.
+	 * @throws IllegalArgumentException
+	 *             if the dimensions of a, b or x0 are illegal.
+	 */
+	public double[] solve(LinearOperator a, double[] b, double[] x0) {
+		if (a.getRows() != a.getColumns() || b.length != a.getRows() || x0.length != a.getColumns())
+			throw new IllegalArgumentException("Illegal matrix dimensions.");
+		double[] x = x0.clone();
+		this.threshold = tolerance * norm(b);
+		this.iterations = 0;
+		this.residualNorm = Double.NaN;
+		this.converged = false;
+		this.brokeDown = false;
+		iterate(a, b, x);
+		return x;
+	}
+
+	/**
+	 * Runs the iteration, improving x in place. Implementations call
+	 * {@link #report(int, double)} after every iteration and stop once it
+	 * returns true or {@link #getMaxIterations()} is reached.
+	 */
+	protected abstract void iterate(LinearOperator a, double[] b, double[] x);
+
+	/**
+	 * Records the residual norm of an iteration and notifies the listener.
+	 *
+	 * @return true, if the tolerance has been reached.
+	 */
+	protected boolean report(int iteration, double residualNorm) {
+		this.iterations = iteration;
+		this.residualNorm = residualNorm;
+		this.converged = residualNorm <= threshold;
+		if (listener != null)
+			listener.iterationDone(iteration, residualNorm);
+		return converged;
+	}
+
+	/**
+	 * Records that the iteration has to stop because the method broke down.
+	 * Implementations call it instead of dividing by zero and return with the
+	 * last valid iterate.
+	 */
+	protected void breakdown() {
+		this.brokeDown = true;
+	}
+
+	/**
+	 * Applies the preconditioner to r, or copies r if there is none.
+	 */
+	protected double[] precondition(double[] r, double[] dest) {
+		if (preconditioner == null) {
+			System.arraycopy(r, 0, dest, 0, r.length);
+			return dest;
+		}
+		return preconditioner.applyInto(r, dest);
+	}
+
+	/** Stores b - A*x in dest. */
+	protected static double[] residual(LinearOperator a, double[] b, double[] x, double[] dest) {
+		a.multiplyInto(x, dest);
+		for (int i = 0; i < dest.length; i++) {
+			dest[i] = b[i] - dest[i];
+		}
+		return dest;
+	}
+
+	protected static double dot(double[] a, double[] b) {
+		double s = 0;
+		for (int i = 0; i < a.length; i++) {
+			s += a[i] * b[i];
+		}
+		return s;
+	}
+
+	protected static double norm(double[] a) {
+		return Math.sqrt(dot(a, a));
+	}
+
+	/** y += alpha * x */
+	protected static void axpy(double alpha, double[] x, double[] y) {
+		for (int i = 0; i < y.length; i++) {
+			y[i] += alpha * x[i];
+		}
+	}
+
+}
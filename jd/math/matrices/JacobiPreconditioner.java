@@ -0,0 +1,43 @@
+package jd.math.matrices;
+
+/**
+ *
+ * The Jacobi (diagonal) preconditioner M = diag(A).
+ *
+ * @author Juri Dispan
+ *
+ */
+
+public class JacobiPreconditioner implements Preconditioner {
+
+	/** Reciprocals of the diagonal entries */
+	private final double[] inverseDiagonal;
+
+	/**
+	 * @param a
+	 *            A quadratic matrix without zeros on its diagonal.
+	 * @throws ArithmeticException
+	 *             if the matrix is not quadratic or has a zero on its
+	 *             diagonal.
+	 */
+	public JacobiPreconditioner(SparseDoubleMatrix a) {
+		if (a.getRows() != a.getColumns())
+			throw new ArithmeticException("Matrix is not quadratic.");
+		this.inverseDiagonal = new double[a.getRows()];
+		for (int i = 0; i < inverseDiagonal.length; i++) {
+			double d = a.getValue(i, i);
+			if (d == 0)
+				throw new ArithmeticException("Zero on the diagonal.");
+			inverseDiagonal[i] = 1 / d;
+		}
+	}
+
+	@Override
+	public double[] applyInto(double[] r, double[] dest) {
+		for (int i = 0; i < inverseDiagonal.length; i++) {
+			dest[i] = r[i] * inverseDiagonal[i];
+		}
+		return dest;
+	}
+
+}
@@ -0,0 +1,278 @@
+package jd.math.matrices;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ *
+ * The LU decomposition of a quadratic DoubleMatrix A, computed with partial
+ * pivoting, so that P*A = L*U. L is a unit lower triangular matrix, U an upper
+ * triangular matrix and P a permutation matrix. The factorization costs
+ * O(n^3) once; afterwards the determinant is available in O(n) and every
+ * solve costs O(n^2) per right hand side, so the same decomposition can be
+ * reused for many right hand sides. Instances are immutable and can be shared
+ * between threads.
+ *
+ * @author Juri Dispan
+ *
+ */
+
+public class LUDecomposition {
+
+	/** Dimension of the decomposed matrix */
+	private final int n;
+
+	/** L (below the diagonal, unit diagonal implied) and U, packed together */
+	private final double[][] lu;
+
+	/** Row i of P*A is row piv[i] of A */
+	private final int[] piv;
+
+	/** +1 or -1, depending on the number of row interchanges */
+	private final int pivSign;
+
+	/** Whether a zero pivot was encountered */
+	private final boolean singular;
+
+	/**
+	 * Decomposes the matrix in the argument. The argument won't be mutated.
+	 *
+	 * @param a
+	 *            A quadratic matrix.
+	 * @throws ArithmeticException
+	 *             if the matrix is not quadratic.
+	 */
+	public LUDecomposition(DoubleMatrix a) {
+		this.lu = a.toArray();
+		this.n = lu.length;
+		if (n != 0 && lu[0].length != n)
+			throw new ArithmeticException("Matrix is not quadratic.");
+		this.piv = new int[n];
+		for (int i = 0; i < n; i++) {
+			piv[i] = i;
+		}
+
+		int sign = 1;
+		boolean sing = false;
+		for (int k = 0; k < n; k++) {
+			int max = k;
+			for (int i = k + 1; i < n; i++) {
+				if (Math.abs(lu[i][k]) > Math.abs(lu[max][k])) {
+					max = i;
+				}
+			}
+			if (max != k) {
+				double[] tmp = lu[max];
+				lu[max] = lu[k];
+				lu[k] = tmp;
+				int t = piv[max];
+				piv[max] = piv[k];
+				piv[k] = t;
+				sign = -sign;
+			}
+
+			double[] rowK = lu[k];
+			double pivot = rowK[k];
+			if (pivot == 0.0) {
+				sing = true;
+				continue;
+			}
+			for (int i = k + 1; i < n; i++) {
+				double[] rowI = lu[i];
+				double l = rowI[k] / pivot;
+				rowI[k] = l;
+				if (l == 0.0)
+					continue;
+				for (int j = k + 1; j < n; j++) {
+					rowI[j] -= l * rowK[j];
+				}
+			}
+		}
+		this.pivSign = sign;
+		this.singular = sing;
+	}
+
+	/**
+	 * @return true, if the decomposed matrix is singular.
+	 */
+	public boolean isSingular() {
+		return singular;
+	}
+
+	/**
+	 * @return The determinant of the decomposed matrix.
+	 */
+	public double determinant() {
+		double det = pivSign;
+		for (int i = 0; i < n; i++) {
+			det *= lu[i][i];
+		}
+		return det;
+	}
+
+	/**
+	 * Solves A*x = b for x.
+	 *
+	 * @param b
+	 *            A matrix with as many rows as A. Every column is treated as a
+	 *            right hand side of its own.
+	 * @return The matrix x that solves A*x = b.
+	 * @throws IllegalArgumentException
+	 *             if b's dimensions are illegal.
+	 * @throws ArithmeticException
+	 *             if A is singular.
+	 */
+	public DoubleMatrix solve(DoubleMatrix b) {
+		if (b.getRows() != n)
+			throw new IllegalArgumentException("Illegal matrix dimensions.");
+		if (singular)
+			throw new ArithmeticException("Matrix is singular.");
+		double[][] x = permute(b);
+		substitute(x, 0, b.getColumns());
+		return new DoubleMatrix(x);
+	}
+
+	/**
+	 * Solves A*x = b for x like {@link #solve(DoubleMatrix)}, distributing the
+	 * columns of b among the threads of the given pool.
+	 *
+	 * @param b
+	 *            A matrix with as many rows as A. Every column is treated as a
+	 *            right hand side of its own.
+	 * @param pool
+	 *            The pool to run the computation in.
+	 * @return The matrix x that solves A*x = b.
+	 * @throws IllegalArgumentException
+	 *             if b's dimensions are illegal.
+	 * @throws ArithmeticException
+	 *             if A is singular.
+	 */
+	public DoubleMatrix solveParallel(DoubleMatrix b, ForkJoinPool pool) {
+		if (b.getRows() != n)
+			throw new IllegalArgumentException("Illegal matrix dimensions.");
+		if (singular)
+			throw new ArithmeticException("Matrix is singular.");
+		int m = b.getColumns();
+		double[][] x = permute(b);
+		int grain = Math.max(1, m / (4 * pool.getParallelism()));
+		pool.invoke(new Gemm.RowTask((from, to) -> substitute(x, from, to), 0, m, grain));
+		return new DoubleMatrix(x);
+	}
+
+	/**
+	 * Solves A*x = b for a single right hand side.
+	 *
+	 * @param b
+	 *            A vector with n entries.
+	 * @return The vector x that solves A*x = b.
+	 * @throws IllegalArgumentException
+	 *             if b's length is illegal.
+	 * @throws ArithmeticException
+	 *             if A is singular.
+	 */
+	public double[] solve(double[] b) {
+		return solveInto(b, new double[n]);
+	}
+
+	/**
+	 * Solves A*x = b for a single right hand side and stores x in dest, so that
+	 * a stream of vectors can be solved without allocating.
+	 *
+	 * @return dest
+	 * @throws IllegalArgumentException
+	 *             if the lengths of b or dest are illegal, or if they are the
+	 *             same array.
+	 * @throws ArithmeticException
+	 *             if A is singular.
+	 */
+	public double[] solveInto(double[] b, double[] dest) {
+		if (b.length != n || dest.length != n || b == dest)
+			throw new IllegalArgumentException("Illegal vector dimensions.");
+		if (singular)
+			throw new ArithmeticException("Matrix is singular.");
+		for (int i = 0; i < n; i++) {
+			dest[i] = b[piv[i]];
+		}
+		for (int i = 0; i < n; i++) {
+			double[] row = lu[i];
+			double s = dest[i];
+			for (int k = 0; k < i; k++) {
+				s -= row[k] * dest[k];
+			}
+			dest[i] = s;
+		}
+		for (int i = n - 1; i >= 0; i--) {
+			double[] row = lu[i];
+			double s = dest[i];
+			for (int k = i + 1; k < n; k++) {
+				s -= row[k] * dest[k];
+			}
+			dest[i] = s / row[i];
+		}
+		return dest;
+	}
+
+	/**
+	 * @return The inverse of A.
+	 * @throws ArithmeticException
+	 *             if A is singular.
+	 */
+	public DoubleMatrix inverse() {
+		if (singular)
+			throw new ArithmeticException("Matrix is singular.");
+		double[][] x = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			x[i][piv[i]] = 1;
+		}
+		substitute(x, 0, n);
+		return new DoubleMatrix(x);
+	}
+
+	/** Copies the rows of b into a new array, in the order of P. */
+	private double[][] permute(DoubleMatrix b) {
+		int m = b.getColumns();
+		double[][] x = new double[n][m];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < m; j++) {
+				x[i][j] = b.getValue(piv[i], j);
+			}
+		}
+		return x;
+	}
+
+	/**
+	 * Performs forward and back substitution on the columns from .. to-1 of the
+	 * already permuted right hand sides in x, overwriting them with the
+	 * solution.
+	 */
+	private void substitute(double[][] x, int from, int to) {
+		for (int k = 0; k < n; k++) {
+			double[] xk = x[k];
+			for (int i = k + 1; i < n; i++) {
+				double l = lu[i][k];
+				if (l == 0.0)
+					continue;
+				double[] xi = x[i];
+				for (int j = from; j < to; j++) {
+					xi[j] -= xk[j] * l;
+				}
+			}
+		}
+		for (int k = n - 1; k >= 0; k--) {
+			double[] xk = x[k];
+			double d = lu[k][k];
+			for (int j = from; j < to; j++) {
+				xk[j] /= d;
+			}
+			for (int i = 0; i < k; i++) {
+				double u = lu[i][k];
+				if (u == 0.0)
+					continue;
+				double[] xi = x[i];
+				for (int j = from; j < to; j++) {
+					xi[j] -= xk[j] * u;
+				}
+			}
+		}
+	}
+
+}
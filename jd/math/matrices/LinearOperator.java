@@ -0,0 +1,30 @@
+package jd.math.matrices;
+
+/**
+ *
+ * A linear map given only by its action on vectors. The iterative solvers work
+ * on this abstraction, so a system can be solved without ever storing its
+ * matrix densely.
+ *
+ * @author Juri Dispan
+ *
+ */
+
+public interface LinearOperator {
+
+	/** Returns the number of rows of the operator's matrix. */
+	int getRows();
+
+	/** Returns the number of columns of the operator's matrix. */
+	int getColumns();
+
+	/**
+	 * Stores A * v in dest, which must not be v.
+	 *
+	 * @return dest
+	 * @throws IllegalArgumentException
+	 *             if the lengths of v or dest are illegal.
+	 */
+	double[] multiplyInto(double[] v, double[] dest);
+
+}
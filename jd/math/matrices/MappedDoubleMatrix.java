@@ -0,0 +1,524 @@
+package jd.math.matrices;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ *
+ * A matrix of double values stored in a file, for matrices that do not fit
+ * into the heap. The file is memory-mapped, so the operating system pages the
+ * data in and out as needed. The values are split into square tiles of
+ * tileSize x tileSize values, each of them contiguous in the file, so a tile
+ * is read with a single bulk copy. Multiplication and solving work tile by
+ * tile and keep at most a few tiles, or a single column of tiles, in memory.
+ * <p>
+ * The file starts with a 16 byte header (magic number, tile size, rows,
+ * columns), followed by the tiles in row-major order, each of them row-major
+ * and padded with zeros at the edges of the matrix. All numbers are little
+ * endian.
+ *
+ * @author Juri Dispan
+ *
+ */
+
+public class MappedDoubleMatrix implements Closeable {
+
+	private static final int MAGIC = 0x4D444A31;
+	private static final int HEADER = 16;
+
+	/** Default edge length of the tiles: 512 KiB per tile */
+	public static final int DEFAULT_TILE_SIZE = 256;
+
+	/** Bytes mapped at once, at most */
+	private static final long REGION = 1L << 30;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+
+	private final int x; // rows
+	private final int y; // columns
+	private final int tile;
+
+	/** Number of tile rows and tile columns */
+	private final int tilesX;
+	private final int tilesY;
+
+	/** Mapped parts of the file, each holding tilesPerRegion tiles */
+	private final MappedByteBuffer[] regions;
+	private final int tilesPerRegion;
+
+	private MappedDoubleMatrix(RandomAccessFile file, int rows, int cols, int tile) {
+		this.file = file;
+		this.channel = file.getChannel();
+		this.x = rows;
+		this.y = cols;
+		this.tile = tile;
+		this.tilesX = (rows + tile - 1) / tile;
+		this.tilesY = (cols + tile - 1) / tile;
+		this.tilesPerRegion = (int) Math.max(1, REGION / tileBytes());
+		this.regions = new MappedByteBuffer[(int) ((tilesX * (long) tilesY + tilesPerRegion - 1) / tilesPerRegion)];
+	}
+
+	/**
+	 * Creates a new file holding a rows x cols matrix of zeros, with tiles of
+	 * the default size. An existing file is overwritten.
+	 */
+	public static MappedDoubleMatrix create(Path path, int rows, int cols) throws IOException {
+		return create(path, rows, cols, DEFAULT_TILE_SIZE);
+	}
+
+	/**
+	 * Creates a new file holding a rows x cols matrix of zeros. An existing
+	 * file is overwritten.
+	 *
+	 * @param tileSize
+	 *            Edge length of the tiles, between 1 and 4096. Matrices can
+	 *            only be multiplied with each other if their tile sizes match.
+	 */
+	public static MappedDoubleMatrix create(Path path, int rows, int cols, int tileSize) throws IOException {
+		if (rows < 0 || cols < 0 || tileSize < 1 || tileSize > 4096)
+			throw new IllegalArgumentException("Illegal matrix dimensions.");
+		RandomAccessFile f = new RandomAccessFile(path.toFile(), "rw");
+		try {
+			MappedDoubleMatrix m = new MappedDoubleMatrix(f, rows, cols, tileSize);
+			f.setLength(0);
+			f.setLength(HEADER + m.tilesX * (long) m.tilesY * m.tileBytes());
+			ByteBuffer h = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+			h.putInt(MAGIC).putInt(tileSize).putInt(rows).putInt(cols).flip();
+			m.channel.write(h, 0);
+			return m;
+		} catch (IOException | RuntimeException e) {
+			f.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens a matrix file written by this class.
+	 *
+	 * @throws IOException
+	 *             if the file can't be read or is not a matrix file.
+	 */
+	public static MappedDoubleMatrix open(Path path) throws IOException {
+		RandomAccessFile f = new RandomAccessFile(path.toFile(), "rw");
+		try {
+			ByteBuffer h = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+			f.getChannel().read(h, 0);
+			h.flip();
+			if (h.remaining() < HEADER || h.getInt() != MAGIC)
+				throw new IOException("Not a matrix file: " + path);
+			int tileSize = h.getInt();
+			int rows = h.getInt();
+			int cols = h.getInt();
+			MappedDoubleMatrix m = new MappedDoubleMatrix(f, rows, cols, tileSize);
+			if (f.length() < HEADER + m.tilesX * (long) m.tilesY * m.tileBytes())
+				throw new IOException("Matrix file is truncated: " + path);
+			return m;
+		} catch (IOException | RuntimeException e) {
+			f.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes the values of m to a new matrix file.
+	 */
+	public static MappedDoubleMatrix valueOf(DoubleMatrix m, Path path) throws IOException {
+		MappedDoubleMatrix r = create(path, m.getRows(), m.getColumns());
+		int t = r.tile;
+		double[] buf = new double[t * t];
+		for (int ti = 0; ti < r.tilesX; ti++) {
+			for (int tj = 0; tj < r.tilesY; tj++) {
+				Arrays.fill(buf, 0);
+				for (int i = ti * t; i < Math.min(r.x, (ti + 1) * t); i++) {
+					for (int j = tj * t; j < Math.min(r.y, (tj + 1) * t); j++) {
+						buf[(i - ti * t) * t + j - tj * t] = m.getValue(i, j);
+					}
+				}
+				r.writeTile(ti, tj, buf);
+			}
+		}
+		return r;
+	}
+
+	/** Returns the number of rows of this matrix. */
+	public int getRows() {
+		return this.x;
+	}
+
+	/** Returns the number of columns of this matrix. */
+	public int getColumns() {
+		return this.y;
+	}
+
+	/** Returns the edge length of the tiles. */
+	public int getTileSize() {
+		return this.tile;
+	}
+
+	/** Returns the value of the matrix at the specified position. */
+	public double getValue(int row, int col) {
+		checkIndex(row, col);
+		int t = (row / tile) * tilesY + col / tile;
+		return region(t / tilesPerRegion).getDouble(position(t, row % tile, col % tile));
+	}
+
+	/**
+	 * Changes the entry of the matrix at the specified position to the
+	 * specified value.
+	 */
+	public void setValue(int row, int col, double val) {
+		checkIndex(row, col);
+		int t = (row / tile) * tilesY + col / tile;
+		region(t / tilesPerRegion).putDouble(position(t, row % tile, col % tile), val);
+	}
+
+	private void checkIndex(int row, int col) {
+		if (row < 0 || row >= this.x || col < 0 || col >= this.y)
+			throw new IndexOutOfBoundsException("(" + row + ", " + col + ")");
+	}
+
+	/** Position of value (r, c) of tile t within its region. */
+	private int position(int t, int r, int c) {
+		return (int) ((t % tilesPerRegion) * tileBytes() + ((long) r * tile + c) * 8);
+	}
+
+	private long tileBytes() {
+		return (long) tile * tile * 8;
+	}
+
+	private synchronized MappedByteBuffer region(int r) {
+		MappedByteBuffer b = regions[r];
+		if (b == null) {
+			long first = (long) r * tilesPerRegion;
+			long tiles = Math.min(tilesPerRegion, tilesX * (long) tilesY - first);
+			try {
+				b = channel.map(FileChannel.MapMode.READ_WRITE, HEADER + first * tileBytes(), tiles * tileBytes());
+			} catch (IOException e) {
+				throw new IllegalStateException("Can't map matrix file.", e);
+			}
+			b.order(ByteOrder.LITTLE_ENDIAN);
+			regions[r] = b;
+		}
+		return b;
+	}
+
+	/** Returns a view of tile (ti, tj). */
+	private DoubleBuffer tile(int ti, int tj) {
+		int t = ti * tilesY + tj;
+		ByteBuffer b = region(t / tilesPerRegion).duplicate();
+		int pos = position(t, 0, 0);
+		b.position(pos).limit((int) (pos + tileBytes()));
+		return b.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+	}
+
+	/** Copies tile (ti, tj), tileSize^2 values, into dest. */
+	private void readTile(int ti, int tj, double[] dest) {
+		tile(ti, tj).get(dest);
+	}
+
+	/** Overwrites tile (ti, tj) with src, tileSize^2 values. */
+	private void writeTile(int ti, int tj, double[] src) {
+		tile(ti, tj).put(src);
+	}
+
+	/**
+	 * Reads the rows of tile column tj that belong to the tile rows from ..
+	 * to-1, each row tileSize values wide.
+	 */
+	private double[][] readColumn(int tj, int from, int to) {
+		int first = from * tile;
+		double[][] r = new double[Math.min(x, to * tile) - first][tile];
+		double[] buf = new double[tile * tile];
+		for (int ti = from; ti < to; ti++) {
+			readTile(ti, tj, buf);
+			for (int k = 0; k < tile && ti * tile + k < x; k++) {
+				System.arraycopy(buf, k * tile, r[ti * tile + k - first], 0, tile);
+			}
+		}
+		return r;
+	}
+
+	/** Writes back rows read by {@link #readColumn(int, int, int)}. */
+	private void writeColumn(int tj, int from, double[][] rows) {
+		int first = from * tile;
+		double[] buf = new double[tile * tile];
+		for (int ti = from; ti * tile < first + rows.length; ti++) {
+			for (int k = 0; k < tile; k++) {
+				int i = ti * tile + k - first;
+				if (i < rows.length)
+					System.arraycopy(rows[i], 0, buf, k * tile, tile);
+				else
+					Arrays.fill(buf, k * tile, (k + 1) * tile, 0);
+			}
+			writeTile(ti, tj, buf);
+		}
+	}
+
+	/**
+	 * @return A copy of this matrix in the heap.
+	 */
+	public DoubleMatrix toDoubleMatrix() {
+		DoubleMatrix m = new DoubleMatrix(x, y);
+		for (int tj = 0; tj < tilesY; tj++) {
+			double[][] rows = readColumn(tj, 0, tilesX);
+			for (int i = 0; i < x; i++) {
+				for (int j = tj * tile; j < Math.min(y, (tj + 1) * tile); j++) {
+					m.setValue(i, j, rows[i][j - tj * tile]);
+				}
+			}
+		}
+		return m;
+	}
+
+	/**
+	 * Multiply this matrix by an other matrix, writing the product to a new
+	 * file. Every tile of the product is accumulated in memory from one row of
+	 * tiles of this and one column of tiles of b.
+	 *
+	 * @param b
+	 *            The matrix to be multiplied on the right side of this. Its
+	 *            tile size must match the one of this matrix.
+	 * @param path
+	 *            The file to store the product in.
+	 * @return Matrix product (this*b)
+	 * @throws IllegalArgumentException
+	 *             if b's dimensions or tile size are illegal.
+	 */
+	public MappedDoubleMatrix multiply(MappedDoubleMatrix b, Path path) throws IOException {
+		MappedDoubleMatrix c = prepareProduct(b, path);
+		multiply(b, c, 0, tilesX * b.tilesY);
+		return c;
+	}
+
+	/**
+	 * Like {@link #multiply(MappedDoubleMatrix, Path)}, computing the tiles of
+	 * the product in the threads of the given pool.
+	 */
+	public MappedDoubleMatrix multiplyParallel(MappedDoubleMatrix b, Path path, ForkJoinPool pool)
+			throws IOException {
+		MappedDoubleMatrix c = prepareProduct(b, path);
+		pool.invoke(new Gemm.RowTask((from, to) -> multiply(b, c, from, to), 0, tilesX * b.tilesY, 1));
+		return c;
+	}
+
+	private MappedDoubleMatrix prepareProduct(MappedDoubleMatrix b, Path path) throws IOException {
+		if (this.y != b.x || this.tile != b.tile)
+			throw new IllegalArgumentException("Sizes don't match");
+		return create(path, this.x, b.y, this.tile);
+	}
+
+	/** Computes the tiles from .. to-1 of c = this*b, counted row-major. */
+	private void multiply(MappedDoubleMatrix b, MappedDoubleMatrix c, int from, int to) {
+		int t = tile;
+		double[] at = new double[t * t];
+		double[] bt = new double[t * t];
+		double[] ct = new double[t * t];
+		for (int k = from; k < to; k++) {
+			int ti = k / b.tilesY;
+			int tj = k % b.tilesY;
+			Arrays.fill(ct, 0);
+			for (int tk = 0; tk < tilesY; tk++) {
+				readTile(ti, tk, at);
+				b.readTile(tk, tj, bt);
+				Gemm.multiply(t, t, t, at, 0, t, bt, 0, t, ct, 0, t);
+			}
+			c.writeTile(ti, tj, ct);
+		}
+	}
+
+	/**
+	 * Solves this * X = b by a blocked LU decomposition with partial pivoting
+	 * that works on one column of tiles at a time. The decomposition is
+	 * computed in a temporary file next to the result, this matrix is not
+	 * changed.
+	 *
+	 * @param b
+	 *            A matrix with as many rows as this one and the same tile size.
+	 *            Every column is treated as a right hand side of its own.
+	 * @param path
+	 *            The file to store the solution in.
+	 * @return The matrix X with this * X = b.
+	 * @throws IllegalArgumentException
+	 *             if b's dimensions or tile size are illegal.
+	 * @throws ArithmeticException
+	 *             if the matrix is not quadratic or singular.
+	 */
+	public MappedDoubleMatrix solve(MappedDoubleMatrix b, Path path) throws IOException {
+		if (this.x != this.y)
+			throw new ArithmeticException("Matrix is not quadratic.");
+		if (b.x != this.x || b.tile != this.tile)
+			throw new IllegalArgumentException("Sizes don't match");
+		Path dir = path.toAbsolutePath().getParent();
+		Path tmp = Files.createTempFile(dir, "lu", ".tmp");
+		try (MappedDoubleMatrix lu = create(tmp, x, y, tile)) {
+			double[] buf = new double[tile * tile];
+			for (int ti = 0; ti < tilesX; ti++) {
+				for (int tj = 0; tj < tilesY; tj++) {
+					readTile(ti, tj, buf);
+					lu.writeTile(ti, tj, buf);
+				}
+			}
+			int[] piv = lu.factor();
+			MappedDoubleMatrix r = create(path, b.x, b.y, tile);
+			for (int tj = 0; tj < b.tilesY; tj++) {
+				double[][] rows = b.readColumn(tj, 0, b.tilesX);
+				lu.substitute(piv, rows);
+				r.writeColumn(tj, 0, rows);
+			}
+			return r;
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * Overwrites this matrix with its LU decomposition P*A = L*U, one column of
+	 * tiles at a time: factor the panel below the diagonal, then apply its
+	 * row interchanges and elimination steps to every other column of tiles.
+	 *
+	 * @return The row interchanges: row i was swapped with row piv[i].
+	 */
+	private int[] factor() {
+		int n = x;
+		int[] piv = new int[n];
+		for (int tk = 0; tk < tilesX; tk++) {
+			int k0 = tk * tile;
+			int kw = Math.min(tile, n - k0);
+			double[][] p = readColumn(tk, tk, tilesX);
+			for (int c = 0; c < kw; c++) {
+				int m = c;
+				for (int i = c + 1; i < p.length; i++) {
+					if (Math.abs(p[i][c]) > Math.abs(p[m][c]))
+						m = i;
+				}
+				if (p[m][c] == 0)
+					throw new ArithmeticException("Matrix is singular.");
+				piv[k0 + c] = k0 + m;
+				double[] s = p[m];
+				p[m] = p[c];
+				p[c] = s;
+				double[] pc = p[c];
+				for (int i = c + 1; i < p.length; i++) {
+					double[] pi = p[i];
+					double l = pi[c] /= pc[c];
+					for (int j = c + 1; j < kw; j++) {
+						pi[j] -= l * pc[j];
+					}
+				}
+			}
+			writeColumn(tk, tk, p);
+
+			for (int tj = 0; tj < tilesY; tj++) {
+				if (tj == tk)
+					continue;
+				double[][] q = readColumn(tj, tk, tilesX);
+				for (int c = 0; c < kw; c++) {
+					double[] s = q[piv[k0 + c] - k0];
+					q[piv[k0 + c] - k0] = q[c];
+					q[c] = s;
+				}
+				if (tj > tk) {
+					// U block: forward substitution with the unit lower
+					// triangle, then update of the rows below
+					for (int i = 1; i < q.length; i++) {
+						double[] qi = q[i];
+						double[] pi = p[i];
+						for (int c = 0; c < Math.min(i, kw); c++) {
+							double l = pi[c];
+							double[] qc = q[c];
+							for (int j = 0; j < tile; j++) {
+								qi[j] -= l * qc[j];
+							}
+						}
+					}
+				}
+				writeColumn(tj, tk, q);
+			}
+		}
+		return piv;
+	}
+
+	/**
+	 * Overwrites the right hand sides in rows (all n rows of one column of
+	 * tiles) with the solution, given the decomposition in this matrix.
+	 */
+	private void substitute(int[] piv, double[][] rows) {
+		int n = x;
+		for (int i = 0; i < n; i++) {
+			double[] s = rows[piv[i]];
+			rows[piv[i]] = rows[i];
+			rows[i] = s;
+		}
+		for (int tk = 0; tk < tilesX; tk++) {
+			int k0 = tk * tile;
+			int kw = Math.min(tile, n - k0);
+			double[][] l = readColumn(tk, tk, tilesX);
+			for (int c = 0; c < kw; c++) {
+				double[] rc = rows[k0 + c];
+				for (int i = c + 1; i < l.length; i++) {
+					double f = l[i][c];
+					if (f == 0)
+						continue;
+					double[] ri = rows[k0 + i];
+					for (int j = 0; j < tile; j++) {
+						ri[j] -= f * rc[j];
+					}
+				}
+			}
+		}
+		for (int tk = tilesX - 1; tk >= 0; tk--) {
+			int k0 = tk * tile;
+			int kw = Math.min(tile, n - k0);
+			double[][] u = readColumn(tk, 0, tk + 1);
+			for (int c = kw - 1; c >= 0; c--) {
+				int g = k0 + c;
+				double[] rg = rows[g];
+				double d = u[g][c];
+				for (int j = 0; j < tile; j++) {
+					rg[j] /= d;
+				}
+				for (int i = 0; i < g; i++) {
+					double f = u[i][c];
+					if (f == 0)
+						continue;
+					double[] ri = rows[i];
+					for (int j = 0; j < tile; j++) {
+						ri[j] -= f * rg[j];
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes all changes through to the file.
+	 */
+	public synchronized void flush() {
+		for (MappedByteBuffer b : regions) {
+			if (b != null)
+				b.force();
+		}
+	}
+
+	/**
+	 * Writes all changes through to the file and closes it. The matrix can't be
+	 * used afterwards.
+	 */
+	@Override
+	public void close() throws IOException {
+		flush();
+		file.close();
+	}
+
+}
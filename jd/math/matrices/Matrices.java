@@ -1,5 +1,7 @@
 package jd.math.matrices;
 
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * This class offers static methods for matrix operations. It cannot be
  * instanciated.
@@ -82,40 +84,177 @@ public class Matrices {
 
 	public static int[][] multiply(int[][] a, int[][] b) {
 		int[][] c = new int[a.length][b[0].length];
-		for (int i = 0; i < a.length; i++) {
-			for (int j = 0; j < b[0].length; j++) {
-				for (int k = 0; k < b.length; k++) {
-					c[i][j] += a[i][k] * b[k][j];
-				}
-			}
-		}
+		Gemm.multiply(a, b, c);
+		return c;
+	}
+
+	/**
+	 * Multiplies like {@link #multiply(int[][], int[][])}, splitting the rows of
+	 * the product among the threads of the common ForkJoinPool. Products smaller
+	 * than {@link #setParallelThreshold(long)} are computed sequentially.
+	 */
+	public static int[][] multiplyParallel(int[][] a, int[][] b) {
+		return multiplyParallel(a, b, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Multiplies like {@link #multiply(int[][], int[][])}, splitting the rows of
+	 * the product among the threads of the given pool.
+	 */
+	public static int[][] multiplyParallel(int[][] a, int[][] b, ForkJoinPool pool) {
+		int[][] c = new int[a.length][b[0].length];
+		Gemm.multiply(a, b, c, pool);
 		return c;
 	}
 
 	public static long[][] multiply(long[][] a, long[][] b) {
 		long[][] c = new long[a.length][b[0].length];
-		for (int i = 0; i < a.length; i++) {
-			for (int j = 0; j < b[0].length; j++) {
-				for (int k = 0; k < b.length; k++) {
-					c[i][j] += a[i][k] * b[k][j];
-				}
-			}
-		}
+		Gemm.multiply(a, b, c);
+		return c;
+	}
+
+	/**
+	 * Multiplies like {@link #multiply(long[][], long[][])}, treating entries
+	 * of the product that do not fit into a long as specified by mode.
+	 * 
+	 * @throws ArithmeticException
+	 *             if mode is CHECKED and an entry overflows.
+	 */
+	public static long[][] multiply(long[][] a, long[][] b, OverflowMode mode) {
+		return new Matrix(a).multiply(new Matrix(b), mode).toArray();
+	}
+
+	/**
+	 * Multiplies like {@link #multiply(long[][], long[][])}, splitting the rows of
+	 * the product among the threads of the common ForkJoinPool. Products smaller
+	 * than {@link #setParallelThreshold(long)} are computed sequentially.
+	 */
+	public static long[][] multiplyParallel(long[][] a, long[][] b) {
+		return multiplyParallel(a, b, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Multiplies like {@link #multiply(long[][], long[][])}, splitting the rows of
+	 * the product among the threads of the given pool.
+	 */
+	public static long[][] multiplyParallel(long[][] a, long[][] b, ForkJoinPool pool) {
+		long[][] c = new long[a.length][b[0].length];
+		Gemm.multiply(a, b, c, pool);
 		return c;
 	}
 
 	public static double[][] multiply(double[][] a, double[][] b) {
 		double[][] c = new double[a.length][b[0].length];
-		for (int i = 0; i < a.length; i++) {
-			for (int j = 0; j < b[0].length; j++) {
-				for (int k = 0; k < b.length; k++) {
-					c[i][j] += a[i][k] * b[k][j];
-				}
-			}
-		}
+		Gemm.multiply(a, b, c);
+		return c;
+	}
+
+	/**
+	 * Multiplies like {@link #multiply(double[][], double[][])}, splitting the rows of
+	 * the product among the threads of the common ForkJoinPool. Products smaller
+	 * than {@link #setParallelThreshold(long)} are computed sequentially.
+	 */
+	public static double[][] multiplyParallel(double[][] a, double[][] b) {
+		return multiplyParallel(a, b, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Multiplies like {@link #multiply(double[][], double[][])}, splitting the rows of
+	 * the product among the threads of the given pool.
+	 */
+	public static double[][] multiplyParallel(double[][] a, double[][] b, ForkJoinPool pool) {
+		double[][] c = new double[a.length][b[0].length];
+		Gemm.multiply(a, b, c, pool);
 		return c;
 	}
 
+	/**
+	 * Sets the edge length of the tiles used by the blocked matrix
+	 * multiplication. The default of 64 keeps three tiles of doubles within a
+	 * typical L2 cache; smaller values may pay off on machines with small
+	 * caches.
+	 * 
+	 * @param size
+	 *            The new tile size, must be positive.
+	 */
+	public static void setBlockSize(int size) {
+		if (size <= 0)
+			throw new IllegalArgumentException("Block size must be positive.");
+		Gemm.blockSize = size;
+	}
+
+	/** Returns the edge length of the tiles used by the matrix multiplication. */
+	public static int getBlockSize() {
+		return Gemm.blockSize;
+	}
+
+	/**
+	 * Sets the size of the smallest product that is split among several
+	 * threads by the parallel matrix multiplications, measured in
+	 * multiply-adds (rows * inner dimension * columns). Smaller products are
+	 * computed sequentially, since forking would cost more than it saves.
+	 * 
+	 * @param threshold
+	 *            The new threshold, must not be negative.
+	 */
+	public static void setParallelThreshold(long threshold) {
+		if (threshold < 0)
+			throw new IllegalArgumentException("Threshold must not be negative.");
+		Gemm.parallelThreshold = threshold;
+	}
+
+	/**
+	 * Returns the size of the smallest product that is computed in parallel.
+	 */
+	public static long getParallelThreshold() {
+		return Gemm.parallelThreshold;
+	}
+
+	/**
+	 * Sets the size up to which the Strassen multiplication falls back to the
+	 * classical algorithm: products whose smallest dimension is at most this
+	 * size are computed classically, bigger ones are split recursively,
+	 * padding each dimension with zeros if necessary.
+	 * 
+	 * @param threshold
+	 *            The new threshold, must be positive.
+	 */
+	public static void setStrassenThreshold(int threshold) {
+		if (threshold <= 0)
+			throw new IllegalArgumentException("Threshold must be positive.");
+		Strassen.threshold = threshold;
+	}
+
+	/**
+	 * Returns the size up to which the Strassen multiplication falls back to
+	 * the classical algorithm.
+	 */
+	public static int getStrassenThreshold() {
+		return Strassen.threshold;
+	}
+
+	/**
+	 * Sets the size from which exact determinants and solutions of a
+	 * {@link Matrix} are computed modulo several primes and put together with
+	 * the Chinese Remainder Theorem instead of by Bareiss elimination.
+	 * 
+	 * @param threshold
+	 *            The new threshold, must be positive.
+	 */
+	public static void setModularThreshold(int threshold) {
+		if (threshold <= 0)
+			throw new IllegalArgumentException("Threshold must be positive.");
+		Modular.threshold = threshold;
+	}
+
+	/**
+	 * Returns the size from which exact determinants and solutions are
+	 * computed modulo several primes.
+	 */
+	public static int getModularThreshold() {
+		return Modular.threshold;
+	}
+
 	public static Matrix getIdentity(int dim) {
 		Matrix t = new Matrix(new long[dim][dim]);
 		for (int i = 0; i < dim; i++) {
@@ -133,7 +272,8 @@ public class Matrices {
 	 * ist sie vor allem zur Berechnung des Quadrates von Adjazenzmatrizen (=>
 	 * Graphentheorie). Argument a soll ein ein ixi boolean Array sein mit i >
 	 * 0; Wird eine nicht-passende Matrix bergeben, so wird eine
-	 * ArrayOutOfBoundsException geworfen.
+	 * IllegalArgumentException geworfen. Gerechnet wird bitweise mit
+	 * {@link BooleanMatrix#square()}.
 	 * 
 	 * @param a
 	 *            ixi boolean array
@@ -141,16 +281,7 @@ public class Matrices {
 	 */
 
 	public static boolean[][] square(boolean[][] a) {
-		boolean[][] b = new boolean[a.length][a.length];
-		for (int i = 0; i < a.length; i++) {
-			for (int j = 0; j < a.length; j++) {
-				for (int k = 0; k < a.length; k++) {
-					if (a[i][k] && a[k][j])
-						b[i][j] = true;
-				}
-			}
-		}
-		return b;
+		return new BooleanMatrix(a).square().toArray();
 	}
 
 }
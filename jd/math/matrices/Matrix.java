@@ -1,6 +1,10 @@
 package jd.math.matrices;
 
+import java.math.BigInteger;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import jd.math.fractions.BigFraction;
 
 /* 
 	      _            _   _____  _                       
@@ -27,11 +31,21 @@ public class Matrix {
 	/** Number of columns */
 	private int y;
 
-	/** Actual values in the Matrix */
-	private long[][] vals;
+	/**
+	 * Actual values in the Matrix, row-major: entry (i, j) is stored at offset
+	 * + i * stride + j.
+	 */
+	private long[] vals;
+
+	/** Index of entry (0, 0) in vals */
+	private int offset;
+
+	/** Distance between the starts of two consecutive rows in vals */
+	private int stride;
 
 	/**
-	 * Creates a Matrix from the values in the argument
+	 * Creates a Matrix from the values in the argument. The values are copied
+	 * into the flat storage of the new matrix.
 	 * 
 	 * @param values
 	 *            A long[][] representing a matrix, needs to be "rectangular".
@@ -44,9 +58,13 @@ public class Matrix {
 			if (values[i].length != k)
 				throw new IllegalArgumentException("long[][] in argument is not rectangular.");
 		}
-		this.vals = values.clone();
-		this.x = vals.length;
-		this.y = vals[0].length;
+		this.x = values.length;
+		this.y = k;
+		this.vals = new long[size(this.x, this.y)];
+		this.stride = this.y;
+		for (int i = 0; i < this.x; i++) {
+			System.arraycopy(values[i], 0, this.vals, i * this.y, this.y);
+		}
 
 	}
 
@@ -54,7 +72,71 @@ public class Matrix {
 	public Matrix(int rows, int cols) {
 		this.x = rows;
 		this.y = cols;
-		this.vals = new long[this.x][this.y];
+		this.vals = new long[size(this.x, this.y)];
+		this.stride = cols;
+	}
+
+	/**
+	 * Returns rows * cols, the length of the packed storage of a rows x cols
+	 * matrix.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if a dimension is negative or the matrix has more entries
+	 *             than an array can hold.
+	 */
+	static int size(int rows, int cols) {
+		if (rows < 0 || cols < 0)
+			throw new IllegalArgumentException("Illegal matrix dimensions.");
+		if ((long) rows * cols > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("Matrix is too big.");
+		return rows * cols;
+	}
+
+	/**
+	 * Creates a matrix backed by the given array, which holds the values in
+	 * row-major order. The array is not copied, so changes to it are visible in
+	 * the matrix and vice versa.
+	 * 
+	 * @param rows
+	 *            Number of rows.
+	 * @param cols
+	 *            Number of columns.
+	 * @param values
+	 *            At least rows * cols values, row after row.
+	 */
+	public Matrix(int rows, int cols, long[] values) {
+		this(rows, cols, values, 0, cols);
+	}
+
+	/**
+	 * Creates a matrix backed by a region of the given array. Entry (i, j) of
+	 * the matrix is values[offset + i * stride + j]. The array is not copied,
+	 * so changes to it are visible in the matrix and vice versa.
+	 * 
+	 * @param rows
+	 *            Number of rows.
+	 * @param cols
+	 *            Number of columns.
+	 * @param values
+	 *            The backing array.
+	 * @param offset
+	 *            Index of entry (0, 0).
+	 * @param stride
+	 *            Distance between the starts of two consecutive rows, at least
+	 *            cols.
+	 * @throws IllegalArgumentException
+	 *             if the region does not fit into the array.
+	 */
+	public Matrix(int rows, int cols, long[] values, int offset, int stride) {
+		if (rows < 0 || cols < 0 || offset < 0 || stride < cols)
+			throw new IllegalArgumentException("Illegal matrix dimensions.");
+		if (rows > 0 && cols > 0 && offset + (long) (rows - 1) * stride + cols > values.length)
+			throw new IllegalArgumentException("Array is too small.");
+		this.x = rows;
+		this.y = cols;
+		this.vals = values;
+		this.offset = offset;
+		this.stride = stride;
 	}
 
 	/**
@@ -62,12 +144,52 @@ public class Matrix {
 	 * specified value.
 	 */
 	public void setValue(int row, int col, long val) {
-		this.vals[row][col] = val;
+		this.vals[index(row, col)] = val;
 	}
 
 	/** Returns the value of the matrix at the specified position. */
 	public long getValue(int row, int col) {
-		return this.vals[row][col];
+		return this.vals[index(row, col)];
+	}
+
+	/** Returns the number of rows of this matrix. */
+	public int getRows() {
+		return this.x;
+	}
+
+	/** Returns the number of columns of this matrix. */
+	public int getColumns() {
+		return this.y;
+	}
+
+	private int index(int row, int col) {
+		if (row < 0 || row >= this.x || col < 0 || col >= this.y)
+			throw new IndexOutOfBoundsException("(" + row + ", " + col + ")");
+		return this.offset + row * this.stride + col;
+	}
+
+	/** Backing array, entry (i, j) is at offset() + i * stride() + j. */
+	long[] vals() {
+		return this.vals;
+	}
+
+	/** Index of entry (0, 0) in vals(). */
+	int offset() {
+		return this.offset;
+	}
+
+	/** Distance between the starts of two rows in vals(). */
+	int stride() {
+		return this.stride;
+	}
+
+	/** Returns a deep copy of the values of this matrix. */
+	long[][] toArray() {
+		long[][] r = new long[this.x][this.y];
+		for (int i = 0; i < this.x; i++) {
+			System.arraycopy(this.vals, this.offset + i * this.stride, r[i], 0, this.y);
+		}
+		return r;
 	}
 
 	/**
@@ -76,35 +198,176 @@ public class Matrix {
 	 *         this matrix.
 	 */
 	public Matrix negate() {
-		Matrix r = new Matrix(this.x, this.y);
+		return negateInto(new Matrix(this.x, this.y));
+	}
+
+	/**
+	 * Negates every entry of this matrix.
+	 * 
+	 * @return this
+	 */
+	public Matrix negateInPlace() {
+		return negateInto(this);
+	}
+
+	/**
+	 * Stores the negation of this matrix in dest, which may be this matrix
+	 * itself. Any other dest must not share entries with this matrix.
+	 * 
+	 * @return dest
+	 * @throws IllegalArgumentException
+	 *             if dest's dimensions are illegal or dest partially overlaps
+	 *             this matrix.
+	 */
+	public Matrix negateInto(Matrix dest) {
+		checkDestination(dest);
 		for (int i = 0; i < this.x; i++) {
+			int a = this.offset + i * this.stride;
+			int c = dest.offset + i * dest.stride;
 			for (int j = 0; j < this.y; j++) {
-				r.setValue(i, j, -this.vals[i][j]);
+				dest.vals[c + j] = -this.vals[a + j];
 			}
 		}
-		return r;
+		return dest;
 	}
 
 	public Matrix add(Matrix b) {
-		if (this.x != b.x || this.y != b.y)
-			throw new IllegalArgumentException("Sizes don't match");
+		return addInto(b, new Matrix(this.x, this.y));
+	}
+
+	/**
+	 * Adds an other matrix to this matrix, treating sums that do not fit into
+	 * a long as specified by mode.
+	 * 
+	 * @return this + b
+	 * @throws IllegalArgumentException
+	 *             if b's dimensions are illegal.
+	 * @throws ArithmeticException
+	 *             if mode is CHECKED and a sum overflows.
+	 */
+	public Matrix add(Matrix b, OverflowMode mode) {
+		checkSize(b);
 		Matrix r = new Matrix(this.x, this.y);
 		for (int i = 0; i < this.x; i++) {
+			int a = this.offset + i * this.stride;
+			int bi = b.offset + i * b.stride;
+			int c = i * this.y;
 			for (int j = 0; j < this.y; j++) {
-				r.setValue(i, j, this.vals[i][j] + b.getValue(i, j));
+				long u = this.vals[a + j];
+				long v = b.vals[bi + j];
+				long s = u + v;
+				// overflow iff both summands have a sign different from s
+				if (((u ^ s) & (v ^ s)) < 0 && mode != OverflowMode.WRAP) {
+					if (mode == OverflowMode.CHECKED)
+						throw new ArithmeticException("long overflow");
+					s = u < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+				}
+				r.vals[c + j] = s;
 			}
 		}
 		return r;
 	}
 
+	/**
+	 * Adds b to this matrix.
+	 * 
+	 * @return this
+	 * @throws IllegalArgumentException
+	 *             if b's dimensions are illegal.
+	 */
+	public Matrix addInPlace(Matrix b) {
+		return addInto(b, this);
+	}
+
+	/**
+	 * Stores this + b in dest, which may be one of the summands. Any other dest
+	 * must not share entries with the summands.
+	 * 
+	 * @return dest
+	 * @throws IllegalArgumentException
+	 *             if the dimensions of b or dest are illegal, or if dest
+	 *             partially overlaps a summand.
+	 */
+	public Matrix addInto(Matrix b, Matrix dest) {
+		checkSize(b);
+		checkDestination(dest);
+		b.checkDestination(dest);
+		for (int i = 0; i < this.x; i++) {
+			int a = this.offset + i * this.stride;
+			int bi = b.offset + i * b.stride;
+			int c = dest.offset + i * dest.stride;
+			for (int j = 0; j < this.y; j++) {
+				dest.vals[c + j] = this.vals[a + j] + b.vals[bi + j];
+			}
+		}
+		return dest;
+	}
+
 	public Matrix multiply(long a) {
-		Matrix r = new Matrix(this.x, this.y);
+		return multiplyInto(a, new Matrix(this.x, this.y));
+	}
+
+	/**
+	 * Multiplies every entry of this matrix by a.
+	 * 
+	 * @return this
+	 */
+	public Matrix scaleInPlace(long a) {
+		return multiplyInto(a, this);
+	}
+
+	/**
+	 * Stores a * this in dest, which may be this matrix itself. Any other dest
+	 * must not share entries with this matrix.
+	 * 
+	 * @return dest
+	 * @throws IllegalArgumentException
+	 *             if dest's dimensions are illegal or dest partially overlaps
+	 *             this matrix.
+	 */
+	public Matrix multiplyInto(long a, Matrix dest) {
+		checkDestination(dest);
 		for (int i = 0; i < this.x; i++) {
+			int ai = this.offset + i * this.stride;
+			int c = dest.offset + i * dest.stride;
 			for (int j = 0; j < this.y; j++) {
-				r.setValue(i, j, a * this.vals[i][j]);
+				dest.vals[c + j] = a * this.vals[ai + j];
 			}
 		}
-		return r;
+		return dest;
+	}
+
+	private void checkSize(Matrix b) {
+		if (this.x != b.x || this.y != b.y)
+			throw new IllegalArgumentException("Sizes don't match");
+	}
+
+	/**
+	 * Checks that dest can take the result of an element-wise operation on this
+	 * matrix. The operations run row by row, so a dest that shares entries with
+	 * this matrix without coinciding with it would overwrite entries before
+	 * they are read.
+	 */
+	private void checkDestination(Matrix dest) {
+		checkSize(dest);
+		if (this.vals != dest.vals || this.x == 0 || this.y == 0)
+			return;
+		if (this.offset == dest.offset && this.stride == dest.stride)
+			return;
+		long end = this.offset + (long) (this.x - 1) * this.stride + this.y;
+		long destEnd = dest.offset + (long) (this.x - 1) * dest.stride + this.y;
+		if (end <= dest.offset || destEnd <= this.offset)
+			return;
+		if (this.stride == dest.stride) {
+			// entry (i, j) of dest is entry (i + q, j + r) or (i + q + 1, j + r - stride) of this
+			long q = Math.floorDiv(dest.offset - this.offset, (long) this.stride);
+			long r = Math.floorMod(dest.offset - this.offset, (long) this.stride);
+			boolean same = r < this.y && Math.abs(q) < this.x;
+			boolean next = this.stride - r < this.y && Math.abs(q + 1) < this.x;
+			if (!same && !next)
+				return;
+		}
+		throw new IllegalArgumentException("Destination overlaps an operand.");
 	}
 
 	/**
@@ -118,79 +381,402 @@ public class Matrix {
 	 */
 
 	public Matrix multiply(Matrix b) {
+		return multiplyInto(b, new Matrix(this.x, b.y));
+	}
+
+	/**
+	 * Multiply this matrix by an other matrix, treating entries of the product
+	 * that do not fit into a long as specified by mode. Overflowing partial
+	 * sums do not count as long as the entry itself fits. If the entries of
+	 * the factors are small enough that no overflow is possible, this is as
+	 * fast as {@link #multiply(Matrix)}.
+	 * 
+	 * @param b
+	 *            The matrix to be multiplied on the right side of this.
+	 * @return Matrix product (this*b)
+	 * @throws IllegalArgumentException
+	 *             if b's dimensions are illegal.
+	 * @throws ArithmeticException
+	 *             if mode is CHECKED and an entry overflows.
+	 */
+	public Matrix multiply(Matrix b, OverflowMode mode) {
+		Matrix dest = new Matrix(this.x, b.y);
+		prepareProduct(b, dest);
+		Gemm.multiply(this.x, this.y, b.y, this.vals, this.offset, this.stride, b.vals, b.offset, b.stride, dest.vals,
+				dest.offset, dest.stride, mode);
+		return dest;
+	}
+
+	/**
+	 * Multiply this matrix by an other matrix, using all threads of the common
+	 * ForkJoinPool. Small products are computed sequentially.
+	 * 
+	 * @param b
+	 *            The matrix to be multiplied on the right side of this.
+	 * @return Matrix product (this*b)
+	 * @throws IllegalArgumentException
+	 *             if b's dimensions are illegal.
+	 */
+	public Matrix multiplyParallel(Matrix b) {
+		return multiplyParallel(b, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Multiply this matrix by an other matrix, splitting the rows of the
+	 * product among the threads of the given pool. Small products are computed
+	 * sequentially, see {@link Matrices#setParallelThreshold(long)}.
+	 * 
+	 * @param b
+	 *            The matrix to be multiplied on the right side of this.
+	 * @param pool
+	 *            The pool to run the computation in.
+	 * @return Matrix product (this*b)
+	 * @throws IllegalArgumentException
+	 *             if b's dimensions are illegal.
+	 */
+	public Matrix multiplyParallel(Matrix b, ForkJoinPool pool) {
+		return multiplyParallelInto(b, new Matrix(this.x, b.y), pool);
+	}
+
+	/**
+	 * Multiply this matrix by an other matrix using Strassen's algorithm, which
+	 * needs O(n^2.81) instead of O(n^3) operations. It pays off for large
+	 * matrices only; products whose smallest dimension is at most
+	 * {@link Matrices#setStrassenThreshold(int)} are multiplied classically.
+	 * 
+	 * @param b
+	 *            The matrix to be multiplied on the right side of this.
+	 * @return Matrix product (this*b)
+	 * @throws IllegalArgumentException
+	 *             if b's dimensions are illegal.
+	 */
+	public Matrix multiplyStrassen(Matrix b) {
 		if (this.y != b.x)
 			throw new IllegalArgumentException("Sizes don't match");
-		long[][] c = new long[this.x][b.y];
-		for (int i = 0; i < this.x; i++) {
-			for (int j = 0; j < b.y; j++) {
-				for (int k = 0; k < b.x; k++) {
-					c[i][j] += this.vals[i][k] * b.vals[k][j];
+		Matrix c = new Matrix(this.x, b.y);
+		Strassen.multiply(this.x, this.y, b.y, this.vals, this.offset, this.stride, b.vals, b.offset, b.stride, c.vals,
+				0, c.stride);
+		return c;
+	}
+
+	/**
+	 * Stores the product this*b in dest, overwriting its previous values. dest
+	 * must not share its storage with this or b.
+	 * 
+	 * @param b
+	 *            The matrix to be multiplied on the right side of this.
+	 * @param dest
+	 *            The matrix to store the product in.
+	 * @return dest
+	 * @throws IllegalArgumentException
+	 *             if the dimensions of b or dest are illegal, or if dest shares
+	 *             its storage with this or b.
+	 */
+	public Matrix multiplyInto(Matrix b, Matrix dest) {
+		prepareProduct(b, dest);
+		Gemm.multiply(this.x, this.y, b.y, this.vals, this.offset, this.stride, b.vals, b.offset, b.stride, dest.vals,
+				dest.offset, dest.stride);
+		return dest;
+	}
+
+	/**
+	 * Stores the product this*b in dest like
+	 * {@link #multiplyInto(Matrix, Matrix)}, splitting the rows of the product
+	 * among the threads of the given pool.
+	 * 
+	 * @return dest
+	 * @throws IllegalArgumentException
+	 *             if the dimensions of b or dest are illegal, or if dest shares
+	 *             its storage with this or b.
+	 */
+	public Matrix multiplyParallelInto(Matrix b, Matrix dest, ForkJoinPool pool) {
+		prepareProduct(b, dest);
+		Gemm.multiply(this.x, this.y, b.y, this.vals, this.offset, this.stride, b.vals, b.offset, b.stride, dest.vals,
+				dest.offset, dest.stride, pool);
+		return dest;
+	}
+
+	/** Checks the arguments of a product and clears dest. */
+	private void prepareProduct(Matrix b, Matrix dest) {
+		if (this.y != b.x || dest.x != this.x || dest.y != b.y)
+			throw new IllegalArgumentException("Sizes don't match");
+		if (dest.vals == this.vals || dest.vals == b.vals)
+			throw new IllegalArgumentException("Destination must not share storage with a factor.");
+		for (int i = 0; i < dest.x; i++) {
+			int c = dest.offset + i * dest.stride;
+			Arrays.fill(dest.vals, c, c + dest.y, 0);
+		}
+	}
+
+	/**
+	 * Raises this matrix to the k-th power by repeated squaring, which needs
+	 * O(n^3 log k) instead of O(n^3 k) operations. The products are computed in
+	 * a few reused buffers. Like {@link #multiply(Matrix)}, the entries silently
+	 * overflow; use {@link #pow(long, long)} to compute modulo a number.
+	 * 
+	 * @param k
+	 *            The exponent. this^0 is the identity matrix.
+	 * @return this^k
+	 * @throws ArithmethicException
+	 *             if the matrix is not quadratic.
+	 * @throws IllegalArgumentException
+	 *             if k is negative.
+	 */
+	public Matrix pow(long k) {
+		if (this.x != this.y)
+			throw new ArithmeticException("Matrix is not quadratic.");
+		if (k < 0)
+			throw new IllegalArgumentException("Exponent must not be negative.");
+		Matrix base = copy();
+		Matrix t = new Matrix(this.x, this.x);
+		Matrix r = null;
+		while (true) {
+			if ((k & 1) != 0) {
+				if (r == null) {
+					r = base.copy();
+				} else {
+					r.multiplyInto(base, t);
+					Matrix s = r;
+					r = t;
+					t = s;
 				}
 			}
+			k >>= 1;
+			if (k == 0)
+				break;
+			base.multiplyInto(base, t);
+			Matrix s = base;
+			base = t;
+			t = s;
+		}
+		if (r == null) {
+			// not Matrices.getIdentity, which rejects the empty matrix
+			r = new Matrix(this.x, this.x);
+			for (int i = 0; i < this.x; i++) {
+				r.vals[i * this.x + i] = 1;
+			}
 		}
-		return new Matrix(c);
+		return r;
 	}
 
 	/**
-	 * Calculates the determinant of the matrix, using the LaPlace procedure. I
-	 * don't recommend using it on big matrices, might lead to stack overflow.
+	 * Raises this matrix to the k-th power modulo mod by repeated squaring.
+	 * Every entry of the result lies in 0 .. mod-1, and no intermediate value
+	 * overflows.
 	 * 
+	 * @param k
+	 *            The exponent. this^0 is the identity matrix.
+	 * @param mod
+	 *            The modulus, must be positive.
+	 * @return this^k mod mod
 	 * @throws ArithmethicException
 	 *             if the matrix is not quadratic.
+	 * @throws IllegalArgumentException
+	 *             if k is negative or mod is not positive.
+	 */
+	public Matrix pow(long k, long mod) {
+		if (this.x != this.y)
+			throw new ArithmeticException("Matrix is not quadratic.");
+		if (k < 0)
+			throw new IllegalArgumentException("Exponent must not be negative.");
+		if (mod <= 0)
+			throw new IllegalArgumentException("Modulus must be positive.");
+		int n = this.x;
+		long[] base = new long[n * n];
+		long[] r = new long[n * n];
+		long[] t = new long[n * n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				base[i * n + j] = Math.floorMod(this.vals[this.offset + i * this.stride + j], mod);
+			}
+			r[i * n + i] = 1 % mod;
+		}
+		while (k != 0) {
+			if ((k & 1) != 0) {
+				multiplyMod(n, r, base, t, mod);
+				long[] s = r;
+				r = t;
+				t = s;
+			}
+			k >>= 1;
+			if (k == 0)
+				break;
+			multiplyMod(n, base, base, t, mod);
+			long[] s = base;
+			base = t;
+			t = s;
+		}
+		return new Matrix(n, n, r);
+	}
+
+	/**
+	 * Stores a*b mod m in c. All three are nxn matrices stored row-major
+	 * without gaps, the entries of a and b lie in 0 .. m-1.
+	 */
+	private static void multiplyMod(int n, long[] a, long[] b, long[] c, long m) {
+		Arrays.fill(c, 0);
+		// below 2^31, c + a*b stays below 2^62
+		boolean small = m <= 1L << 31;
+		for (int i = 0; i < n; i++) {
+			int ci = i * n;
+			for (int k = 0; k < n; k++) {
+				long aik = a[ci + k];
+				if (aik == 0)
+					continue;
+				int bk = k * n;
+				if (small) {
+					for (int j = 0; j < n; j++) {
+						c[ci + j] = (c[ci + j] + aik * b[bk + j]) % m;
+					}
+				} else {
+					for (int j = 0; j < n; j++) {
+						c[ci + j] = addMod(c[ci + j], multiplyMod(aik, b[bk + j], m), m);
+					}
+				}
+			}
+		}
+	}
+
+	/** a*b mod m for 0 <= a, b < m, from the full 128-bit product. */
+	private static long multiplyMod(long a, long b, long m) {
+		return remainder(Math.multiplyHigh(a, b), a * b, m);
+	}
+
+	/**
+	 * (hi * 2^64 + lo) mod m for 0 <= hi < m, lo taken as unsigned. This is
+	 * Knuth's long division with two 32-bit quotient digits (divlu in Hacker's
+	 * Delight), keeping only the remainder.
+	 */
+	private static long remainder(long hi, long lo, long m) {
+		final long b = 1L << 32;
+		// normalize, so that the top bit of m is set; m < 2^63 gives s > 0
+		int s = Long.numberOfLeadingZeros(m);
+		m <<= s;
+		long vn1 = m >>> 32;
+		long vn0 = m & 0xFFFFFFFFL;
+		long un32 = (hi << s) | (lo >>> (64 - s));
+		long un10 = lo << s;
+		long un1 = un10 >>> 32;
+		long un0 = un10 & 0xFFFFFFFFL;
+
+		long q1 = Long.divideUnsigned(un32, vn1);
+		long rhat = un32 - q1 * vn1;
+		while (q1 >= b || Long.compareUnsigned(q1 * vn0, rhat * b + un1) > 0) {
+			q1--;
+			rhat += vn1;
+			if (rhat >= b)
+				break;
+		}
+		long un21 = un32 * b + un1 - q1 * m;
+
+		long q0 = Long.divideUnsigned(un21, vn1);
+		rhat = un21 - q0 * vn1;
+		while (q0 >= b || Long.compareUnsigned(q0 * vn0, rhat * b + un0) > 0) {
+			q0--;
+			rhat += vn1;
+			if (rhat >= b)
+				break;
+		}
+		return (un21 * b + un0 - q0 * m) >>> s;
+	}
+
+	/** a+b mod m for 0 <= a, b < m, without overflow. */
+	private static long addMod(long a, long b, long m) {
+		long s = a - (m - b);
+		return s < 0 ? s + m : s;
+	}
+
+	/** Returns a copy of this matrix with its own packed storage. */
+	private Matrix copy() {
+		Matrix c = new Matrix(this.x, this.y);
+		for (int i = 0; i < this.x; i++) {
+			System.arraycopy(this.vals, this.offset + i * this.stride, c.vals, i * this.y, this.y);
+		}
+		return c;
+	}
+
+	/**
+	 * Calculates the determinant of the matrix. Matrices up to 3x3 are handled
+	 * directly, bigger ones by fraction-free (Bareiss) elimination in O(n^3).
+	 * 
+	 * @throws ArithmethicException
+	 *             if the matrix is not quadratic or the determinant does not
+	 *             fit into a long. Use {@link #bigDeterminant()} in that case.
 	 */
 
 	public long determinant() {
 		if (this.x != this.y)
 			throw new ArithmeticException("Matrix is not quadratic.");
-		if (this.x == 1)
-			return this.vals[0][0];
-		if (this.x == 2)
-			return this.vals[0][0] * this.vals[1][1] - this.vals[0][1] * this.vals[1][0];
-		if (this.x == 3)
-			return this.vals[0][0] * this.vals[1][1] * this.vals[2][2]
-					+ this.vals[0][1] * this.vals[1][2] * this.vals[2][0]
-					+ this.vals[0][2] * this.vals[1][0] * this.vals[2][1]
-					- this.vals[0][2] * this.vals[1][1] * this.vals[2][0]
-					- this.vals[0][1] * this.vals[1][0] * this.vals[2][2]
-					- this.vals[0][0] * this.vals[1][2] * this.vals[2][1];
-
-		long det = 0;
-
-		for (int i = 0, sign = 1; i < this.x; i++, sign *= -1) {
-			if (this.vals[0][i] == 0)
-				continue;
-			long[][] tmp = new long[this.x - 1][this.x - 1];
-			for (int j = 1; j < this.x; j++) {
-				for (int k = 0, l = 0; k < this.x; k++) {
-					if (k == i)
-						continue;
-					tmp[j - 1][l] = this.vals[j][k];
-					l++;
-				}
+		try {
+			if (this.x == 1)
+				return getValue(0, 0);
+			if (this.x == 2)
+				return Math.subtractExact(Math.multiplyExact(getValue(0, 0), getValue(1, 1)),
+						Math.multiplyExact(getValue(0, 1), getValue(1, 0)));
+			if (this.x == 3) {
+				long d = product(getValue(0, 0), getValue(1, 1), getValue(2, 2));
+				d = Math.addExact(d, product(getValue(0, 1), getValue(1, 2), getValue(2, 0)));
+				d = Math.addExact(d, product(getValue(0, 2), getValue(1, 0), getValue(2, 1)));
+				d = Math.subtractExact(d, product(getValue(0, 2), getValue(1, 1), getValue(2, 0)));
+				d = Math.subtractExact(d, product(getValue(0, 1), getValue(1, 0), getValue(2, 2)));
+				return Math.subtractExact(d, product(getValue(0, 0), getValue(1, 2), getValue(2, 1)));
 			}
-			Matrix t = new Matrix(tmp);
-			det += sign * this.vals[0][i] * t.determinant();
+		} catch (ArithmeticException e) {
+			// an intermediate term overflowed, the determinant itself may fit
 		}
+		return bigDeterminant().longValueExact();
+
+	}
 
-		return det;
+	/** a * b * c, throwing an ArithmeticException on overflow. */
+	private static long product(long a, long b, long c) {
+		return Math.multiplyExact(Math.multiplyExact(a, b), c);
+	}
 
+	/**
+	 * Calculates the exact determinant of the matrix by fraction-free (Bareiss)
+	 * elimination in O(n^3). The elimination runs on longs and switches to
+	 * BigIntegers if an intermediate value overflows. Matrices of at least
+	 * {@link Matrices#getModularThreshold()} rows are handled modulo several
+	 * primes in parallel instead.
+	 * 
+	 * @throws ArithmethicException
+	 *             if the matrix is not quadratic.
+	 */
+	public BigInteger bigDeterminant() {
+		if (this.x != this.y)
+			throw new ArithmeticException("Matrix is not quadratic.");
+		if (this.x >= Modular.threshold)
+			return Modular.determinant(toArray(), ForkJoinPool.commonPool());
+		return Bareiss.determinant(toArray());
 	}
 
-	private long ggt(long a, long b) {
-		return b == 0 ? a : ggt(b, a % b);
+	/**
+	 * Reduces this matrix to reduced row echelon form by exact, fraction-free
+	 * Gauss-Jordan elimination. The result provides rank, null space and
+	 * inverse from the same O(n^3) pass.
+	 */
+	public ExactGaussJordan gaussJordan() {
+		return new ExactGaussJordan(this);
 	}
 
-	private long kgv(long a, long b) {
-		return a / ggt(a, b) * b;
+	/** Returns the rank of this matrix. */
+	public int rank() {
+		return gaussJordan().getRank();
 	}
 
 	/**
 	 * Solves the Matrix for the Matrix in the argument, which needs to have
-	 * only one column.
+	 * only one column. The system is solved exactly by fraction-free (Bareiss)
+	 * elimination, the entries of the result are then truncated to whole
+	 * numbers. Use {@link #solveExact(Matrix)} to get the rational solution.
 	 * 
 	 * @param b
 	 *            The Vector b, where A*x = b
 	 * @return The Vector x, where A*x = b
+	 * @throws ArithmeticException
+	 *             if the matrix is not quadratic or singular, or if an entry
+	 *             of x does not fit into a long.
 	 */
 
 	public Matrix solve(Matrix b) {
@@ -198,87 +784,79 @@ public class Matrix {
 			throw new IllegalArgumentException("Matrix in Argument needs to be a Vector");
 		if (this.x != b.x)
 			throw new IllegalArgumentException("Sizes don't match");
-		long[][] h = new long[this.x][this.y + 1];
+		Bareiss.Solution s = exactSolution(b);
+		long[][] sol = new long[this.x][1];
 		for (int i = 0; i < this.x; i++) {
-			for (int j = 0; j < this.y; j++) {
-				h[i][j] = this.vals[i][j];
-			}
-			h[i][this.y] = b.getValue(0, i);
-		}
-
-		for (int curr = 0; curr < h.length; curr++) {
-			long kgv = 1;
-			for (int i = curr; i < h.length; i++) {
-				kgv = kgv(kgv, h[i][curr]);
-			}
-			for (int i = curr; i < h.length; i++) {
-				multiplyRow(h, i, kgv / h[i][curr]);
-			}
-			for (int i = curr + 1; i < h.length; i++) {
-				subtractRow(h, i, curr);
-			}
-			for (int i = 0; i < h.length; i++) {
-				minimizeRow(h[i]);
-			}
-		}
-
-		return toCoeff(h);
-
-	}
-
-	private void minimizeRow(long[] g) {
-		long ggt = 0;
-		for (int i = 0; i < g.length; i++) {
-			ggt = ggt(ggt, g[i]);
+			sol[i][0] = s.numerators[i][0].divide(s.denominator).longValueExact();
 		}
-		if (ggt == 0)
-			return;
-		for (int i = 0; i < g.length; i++) {
-			g[i] /= ggt;
-		}
-	}
+		return new Matrix(sol);
 
-	private void subtractRow(long[][] g, int minuendRow, int subtrahendRow) {
-		for (int i = 0; i < g[minuendRow].length; i++)
-			g[minuendRow][i] -= g[subtrahendRow][i];
 	}
 
-	private void multiplyRow(long[][] g, int row, long factor) {
-		for (int i = 0; i < g[row].length; i++) {
-			g[row][i] *= factor;
+	/**
+	 * Solves this * X = b exactly over the rationals.
+	 * 
+	 * @param b
+	 *            A matrix with as many rows as this one. Every column is
+	 *            treated as a right hand side of its own.
+	 * @return The matrix X with this * X = b.
+	 * @throws ArithmethicException
+	 *             if the matrix is not quadratic or singular.
+	 */
+	public RationalMatrix solveExact(Matrix b) {
+		if (this.x != b.x)
+			throw new IllegalArgumentException("Sizes don't match");
+		Bareiss.Solution s = exactSolution(b);
+		RationalMatrix r = new RationalMatrix(this.x, b.y);
+		for (int i = 0; i < this.x; i++) {
+			for (int j = 0; j < b.y; j++) {
+				r.setValue(i, j, new BigFraction(s.numerators[i][j], s.denominator));
+			}
 		}
+		return r;
 	}
 
-	private Matrix toCoeff(long[][] m) {
-		long[][] sol = new long[m.length][1];
-		for (int i = m.length - 1; i >= 0; i--) {
-			long zs = m[i][m.length] / m[i][i];
-			for (int j = 0; j < i; j++) {
-				m[j][m.length] -= zs * m[j][i];
-			}
-			sol[i][0] = zs;
-		}
-		return new Matrix(sol);
+	/**
+	 * Solves this * X = b by Bareiss elimination, or modulo several primes for
+	 * matrices of at least {@link Matrices#getModularThreshold()} rows.
+	 */
+	private Bareiss.Solution exactSolution(Matrix b) {
+		if (this.x != this.y)
+			throw new ArithmeticException("Matrix is not quadratic.");
+		if (this.x >= Modular.threshold)
+			return Modular.solve(toArray(), b.toArray(), ForkJoinPool.commonPool());
+		return Bareiss.solve(toArray(), b.toArray());
 	}
 
 	@Override
 	public String toString() {
-		String s = "";
+		StringBuilder s = new StringBuilder();
 		for (int i = 0; i < this.x; i++) {
+			int a = this.offset + i * this.stride;
 			for (int j = 0; j < this.y; j++) {
-				s += j == this.y - 1 ? this.vals[i][j] : this.vals[i][j] + "\t";
+				s.append(this.vals[a + j]);
+				if (j < this.y - 1)
+					s.append('\t');
 			}
 			if (i < this.x - 1)
-				s += "\n";
+				s.append('\n');
 		}
-		return s;
+		return s.toString();
 	}
 
 	@Override
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + Arrays.deepHashCode(vals);
+		int h = 1;
+		for (int i = 0; i < this.x; i++) {
+			int r = 1;
+			for (int j = 0, a = this.offset + i * this.stride; j < this.y; j++) {
+				r = prime * r + Long.hashCode(this.vals[a + j]);
+			}
+			h = prime * h + r;
+		}
+		result = prime * result + h;
 		result = prime * result + x;
 		result = prime * result + y;
 		return result;
@@ -296,15 +874,21 @@ public class Matrix {
 			return false;
 		}
 		Matrix other = (Matrix) obj;
-		if (!Arrays.deepEquals(vals, other.vals)) {
-			return false;
-		}
 		if (x != other.x) {
 			return false;
 		}
 		if (y != other.y) {
 			return false;
 		}
+		for (int i = 0; i < this.x; i++) {
+			int a = this.offset + i * this.stride;
+			int b = other.offset + i * other.stride;
+			for (int j = 0; j < this.y; j++) {
+				if (this.vals[a + j] != other.vals[b + j]) {
+					return false;
+				}
+			}
+		}
 		return true;
 	}
 
@@ -0,0 +1,160 @@
+package jd.math.matrices;
+
+/**
+ *
+ * The matrix exponential e^A by scaling and squaring (Higham, 2005). A is
+ * scaled by 2^-s until its 1-norm is small enough for a diagonal Pade
+ * approximant of degree 3, 5, 7, 9 or 13 to be accurate to double precision,
+ * the approximant r(A) = q(A)^-1 p(A) is evaluated with as few products as
+ * possible and the result is squared s times.
+ *
+ * @author Juri Dispan
+ *
+ */
+
+final class MatrixExponential {
+
+	/** Coefficients of the Pade approximants of degree 3, 5, 7, 9 and 13 */
+	private static final double[][] PADE = {
+			{ 120, 60, 12, 1 },
+			{ 30240, 15120, 3360, 420, 30, 1 },
+			{ 17297280, 8648640, 1995840, 277200, 25200, 1512, 56, 1 },
+			{ 17643225600d, 8821612800d, 2075673600, 302702400, 30270240, 2162160, 110880, 3960, 90, 1 },
+			{ 64764752532480000d, 32382376266240000d, 7771770303897600d, 1187353796428800d, 129060195264000d,
+					10559470521600d, 670442572800d, 33522128640d, 1323241920, 40840800, 960960, 16380, 182, 1 } };
+
+	/** Largest 1-norm for which the approximant of the same index suffices */
+	private static final double[] THETA = { 1.495585217958292e-2, 2.539398330063230e-1, 9.504178996162932e-1,
+			2.097847961257068e0, 5.371920351148152e0 };
+
+	private MatrixExponential() {
+		// cannot be instatiated.
+	}
+
+	/**
+	 * Calculates e^A for a quadratic matrix A.
+	 */
+	static DoubleMatrix expm(DoubleMatrix m) {
+		int n = m.getRows();
+		double[] a = new double[n * n];
+		double[][] rows = m.toArray();
+		for (int i = 0; i < n; i++) {
+			System.arraycopy(rows[i], 0, a, i * n, n);
+		}
+
+		double norm = norm1(n, a);
+		for (int d = 0; d < 4; d++) {
+			if (norm <= THETA[d])
+				return pade(n, a, PADE[d]);
+		}
+		int s = 0;
+		if (norm > THETA[4]) {
+			s = Math.getExponent(norm / THETA[4]) + 1;
+			for (int k = 0; k < a.length; k++) {
+				a[k] = Math.scalb(a[k], -s);
+			}
+		}
+		DoubleMatrix r = pade(n, a, PADE[4]);
+		DoubleMatrix t = new DoubleMatrix(n, n);
+		for (int k = 0; k < s; k++) {
+			r.multiplyInto(r, t);
+			DoubleMatrix swap = r;
+			r = t;
+			t = swap;
+		}
+		return r;
+	}
+
+	/**
+	 * Evaluates the Pade approximant with coefficients b at a. The odd terms
+	 * give u, the even ones v, and r(a) = (v - u)^-1 (v + u).
+	 */
+	private static DoubleMatrix pade(int n, double[] a, double[] b) {
+		double[] a2 = multiply(n, a, a);
+		double[] u;
+		double[] v;
+		if (b.length < 14) {
+			// powers a^2, a^4, ... up to the degree
+			int deg = b.length - 1;
+			double[][] pow = new double[deg / 2 + 1][];
+			pow[1] = a2;
+			for (int k = 2; k < pow.length; k++) {
+				pow[k] = multiply(n, pow[k - 1], a2);
+			}
+			u = new double[n * n];
+			v = new double[n * n];
+			for (int k = 1; k < pow.length; k++) {
+				axpy(b[2 * k + 1], pow[k], u);
+				axpy(b[2 * k], pow[k], v);
+			}
+			addDiagonal(n, b[1], u);
+			addDiagonal(n, b[0], v);
+			u = multiply(n, a, u);
+		} else {
+			double[] a4 = multiply(n, a2, a2);
+			double[] a6 = multiply(n, a4, a2);
+			double[] t = new double[n * n];
+			axpy(b[13], a6, t);
+			axpy(b[11], a4, t);
+			axpy(b[9], a2, t);
+			u = multiply(n, a6, t);
+			axpy(b[7], a6, u);
+			axpy(b[5], a4, u);
+			axpy(b[3], a2, u);
+			addDiagonal(n, b[1], u);
+			u = multiply(n, a, u);
+
+			t = new double[n * n];
+			axpy(b[12], a6, t);
+			axpy(b[10], a4, t);
+			axpy(b[8], a2, t);
+			v = multiply(n, a6, t);
+			axpy(b[6], a6, v);
+			axpy(b[4], a4, v);
+			axpy(b[2], a2, v);
+			addDiagonal(n, b[0], v);
+		}
+		double[] p = new double[n * n];
+		double[] q = new double[n * n];
+		for (int k = 0; k < p.length; k++) {
+			p[k] = v[k] + u[k];
+			q[k] = v[k] - u[k];
+		}
+		return new LUDecomposition(new DoubleMatrix(n, n, q)).solve(new DoubleMatrix(n, n, p));
+	}
+
+	private static double[] multiply(int n, double[] a, double[] b) {
+		double[] c = new double[n * n];
+		Gemm.multiply(n, n, n, a, 0, n, b, 0, n, c, 0, n);
+		return c;
+	}
+
+	/** y += f * x */
+	private static void axpy(double f, double[] x, double[] y) {
+		for (int k = 0; k < y.length; k++) {
+			y[k] += f * x[k];
+		}
+	}
+
+	private static void addDiagonal(int n, double f, double[] a) {
+		for (int i = 0; i < n; i++) {
+			a[i * n + i] += f;
+		}
+	}
+
+	/** Maximum absolute column sum */
+	private static double norm1(int n, double[] a) {
+		double[] sums = new double[n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				sums[j] += Math.abs(a[i * n + j]);
+			}
+		}
+		double max = 0;
+		for (double s : sums) {
+			max = Math.max(max, s);
+		}
+		return max;
+	}
+
+}
@@ -0,0 +1,372 @@
+package jd.math.matrices;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ *
+ * Reading and writing of {@link DoubleMatrix} and {@link Matrix} objects.
+ * <p>
+ * The binary format is a 16 byte header (magic number, element type, rows,
+ * columns) followed by the entries in row-major order, all little endian.
+ * Files are loaded by mapping them into memory and copying the payload into
+ * the matrix in bulk, without any per-entry decoding. The text format is
+ * CSV with one row per line, read and written line by line.
+ *
+ * @author Juri Dispan
+ *
+ */
+
+public final class MatrixIO {
+
+	private static final int MAGIC = 0x424D444A;
+	private static final int HEADER = 16;
+
+	private static final int DOUBLE = 1;
+	private static final int LONG = 2;
+
+	/** Size of the buffer the payload is streamed through */
+	private static final int BUFFER = 1 << 16;
+
+	/** Bytes mapped at once when loading a file, a multiple of 8 */
+	private static final long REGION = 1L << 30;
+
+	private MatrixIO() {
+		// cannot be instatiated.
+	}
+
+	/**
+	 * Writes m to a file in the binary format. An existing file is
+	 * overwritten.
+	 */
+	public static void write(DoubleMatrix m, Path path) throws IOException {
+		try (FileChannel c = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			write(m, c);
+		}
+	}
+
+	/**
+	 * Writes m to a file in the binary format. An existing file is
+	 * overwritten.
+	 */
+	public static void write(Matrix m, Path path) throws IOException {
+		try (FileChannel c = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			write(m, c);
+		}
+	}
+
+	/**
+	 * Writes m to a channel in the binary format.
+	 */
+	public static void write(DoubleMatrix m, WritableByteChannel c) throws IOException {
+		int rows = m.getRows();
+		int cols = m.getColumns();
+		ByteBuffer buf = header(DOUBLE, rows, cols);
+		double[] v = m.vals();
+		for (int i = 0; i < rows; i++) {
+			int a = m.offset() + i * m.stride();
+			for (int j = 0; j < cols;) {
+				if (buf.remaining() < 8) {
+					drain(buf, c);
+				}
+				int k = Math.min(cols - j, buf.remaining() / 8);
+				buf.asDoubleBuffer().put(v, a + j, k);
+				buf.position(buf.position() + 8 * k);
+				j += k;
+			}
+		}
+		drain(buf, c);
+	}
+
+	/**
+	 * Writes m to a channel in the binary format.
+	 */
+	public static void write(Matrix m, WritableByteChannel c) throws IOException {
+		int rows = m.getRows();
+		int cols = m.getColumns();
+		ByteBuffer buf = header(LONG, rows, cols);
+		long[] v = m.vals();
+		for (int i = 0; i < rows; i++) {
+			int a = m.offset() + i * m.stride();
+			for (int j = 0; j < cols;) {
+				if (buf.remaining() < 8) {
+					drain(buf, c);
+				}
+				int k = Math.min(cols - j, buf.remaining() / 8);
+				buf.asLongBuffer().put(v, a + j, k);
+				buf.position(buf.position() + 8 * k);
+				j += k;
+			}
+		}
+		drain(buf, c);
+	}
+
+	/** Returns a buffer holding the header, ready to append the payload. */
+	private static ByteBuffer header(int type, int rows, int cols) {
+		ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+		buf.putInt(MAGIC).putInt(type).putInt(rows).putInt(cols);
+		return buf;
+	}
+
+	/** Writes the content of buf to c and clears it. */
+	private static void drain(ByteBuffer buf, WritableByteChannel c) throws IOException {
+		buf.flip();
+		while (buf.hasRemaining()) {
+			c.write(buf);
+		}
+		buf.clear();
+	}
+
+	/**
+	 * Loads a DoubleMatrix from a file in the binary format.
+	 *
+	 * @throws IOException
+	 *             if the file can't be read or does not hold a DoubleMatrix.
+	 */
+	public static DoubleMatrix readDoubleMatrix(Path path) throws IOException {
+		try (FileChannel c = FileChannel.open(path, StandardOpenOption.READ)) {
+			int[] dim = readHeader(c, DOUBLE);
+			double[] v = new double[size(dim)];
+			for (long pos = 0; pos < v.length * 8L; pos += REGION) {
+				MappedByteBuffer b = map(c, pos, v.length * 8L);
+				b.asDoubleBuffer().get(v, (int) (pos / 8), b.remaining() / 8);
+			}
+			return new DoubleMatrix(dim[0], dim[1], v);
+		}
+	}
+
+	/**
+	 * Loads a Matrix from a file in the binary format.
+	 *
+	 * @throws IOException
+	 *             if the file can't be read or does not hold a Matrix.
+	 */
+	public static Matrix readMatrix(Path path) throws IOException {
+		try (FileChannel c = FileChannel.open(path, StandardOpenOption.READ)) {
+			int[] dim = readHeader(c, LONG);
+			long[] v = new long[size(dim)];
+			for (long pos = 0; pos < v.length * 8L; pos += REGION) {
+				MappedByteBuffer b = map(c, pos, v.length * 8L);
+				b.asLongBuffer().get(v, (int) (pos / 8), b.remaining() / 8);
+			}
+			return new Matrix(dim[0], dim[1], v);
+		}
+	}
+
+	/** Maps the payload from pos on, at most REGION bytes. */
+	private static MappedByteBuffer map(FileChannel c, long pos, long length) throws IOException {
+		if (c.size() < HEADER + length)
+			throw new IOException("Matrix file is truncated.");
+		MappedByteBuffer b = c.map(FileChannel.MapMode.READ_ONLY, HEADER + pos, Math.min(REGION, length - pos));
+		b.order(ByteOrder.LITTLE_ENDIAN);
+		return b;
+	}
+
+	/**
+	 * Reads a DoubleMatrix in the binary format from a channel.
+	 *
+	 * @throws IOException
+	 *             if the channel ends early or does not hold a DoubleMatrix.
+	 */
+	public static DoubleMatrix readDoubleMatrix(ReadableByteChannel c) throws IOException {
+		int[] dim = readHeader(c, DOUBLE);
+		double[] v = new double[size(dim)];
+		ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+		for (int k = 0; k < v.length;) {
+			buf.clear().limit((int) Math.min(BUFFER, (v.length - k) * 8L));
+			fill(buf, c);
+			int n = buf.remaining() / 8;
+			buf.asDoubleBuffer().get(v, k, n);
+			k += n;
+		}
+		return new DoubleMatrix(dim[0], dim[1], v);
+	}
+
+	/**
+	 * Reads a Matrix in the binary format from a channel.
+	 *
+	 * @throws IOException
+	 *             if the channel ends early or does not hold a Matrix.
+	 */
+	public static Matrix readMatrix(ReadableByteChannel c) throws IOException {
+		int[] dim = readHeader(c, LONG);
+		long[] v = new long[size(dim)];
+		ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+		for (int k = 0; k < v.length;) {
+			buf.clear().limit((int) Math.min(BUFFER, (v.length - k) * 8L));
+			fill(buf, c);
+			int n = buf.remaining() / 8;
+			buf.asLongBuffer().get(v, k, n);
+			k += n;
+		}
+		return new Matrix(dim[0], dim[1], v);
+	}
+
+	/**
+	 * Reads and checks the header.
+	 *
+	 * @return rows and columns
+	 */
+	private static int[] readHeader(ReadableByteChannel c, int type) throws IOException {
+		ByteBuffer h = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+		fill(h, c);
+		if (h.getInt() != MAGIC)
+			throw new IOException("Not a matrix file.");
+		if (h.getInt() != type)
+			throw new IOException("Wrong element type.");
+		int rows = h.getInt();
+		int cols = h.getInt();
+		if (rows < 0 || cols < 0)
+			throw new IOException("Illegal matrix dimensions.");
+		return new int[] { rows, cols };
+	}
+
+	/** Reads until buf is full, then flips it. */
+	private static void fill(ByteBuffer buf, ReadableByteChannel c) throws IOException {
+		while (buf.hasRemaining()) {
+			if (c.read(buf) < 0)
+				throw new IOException("Unexpected end of matrix data.");
+		}
+		buf.flip();
+	}
+
+	private static int size(int[] dim) throws IOException {
+		long n = (long) dim[0] * dim[1];
+		if (n > Integer.MAX_VALUE - 8)
+			throw new IOException("Matrix is too big.");
+		return (int) n;
+	}
+
+	/**
+	 * Writes m as CSV, one row per line, entries separated by commas.
+	 */
+	public static void writeCsv(DoubleMatrix m, Writer w) throws IOException {
+		StringBuilder s = new StringBuilder();
+		double[] v = m.vals();
+		for (int i = 0; i < m.getRows(); i++) {
+			int a = m.offset() + i * m.stride();
+			s.setLength(0);
+			for (int j = 0; j < m.getColumns(); j++) {
+				if (j > 0)
+					s.append(',');
+				s.append(v[a + j]);
+			}
+			s.append('\n');
+			w.append(s);
+		}
+		w.flush();
+	}
+
+	/**
+	 * Writes m as CSV, one row per line, entries separated by commas.
+	 */
+	public static void writeCsv(Matrix m, Writer w) throws IOException {
+		StringBuilder s = new StringBuilder();
+		long[] v = m.vals();
+		for (int i = 0; i < m.getRows(); i++) {
+			int a = m.offset() + i * m.stride();
+			s.setLength(0);
+			for (int j = 0; j < m.getColumns(); j++) {
+				if (j > 0)
+					s.append(',');
+				s.append(v[a + j]);
+			}
+			s.append('\n');
+			w.append(s);
+		}
+		w.flush();
+	}
+
+	/**
+	 * Reads a DoubleMatrix from CSV: one row per line, entries separated by
+	 * commas, surrounding whitespace and empty lines are ignored.
+	 *
+	 * @throws IOException
+	 *             if the rows differ in length or an entry is no number.
+	 */
+	public static DoubleMatrix readDoubleMatrixCsv(Reader r) throws IOException {
+		BufferedReader in = new BufferedReader(r);
+		double[] v = new double[16];
+		int n = 0;
+		int rows = 0;
+		int cols = -1;
+		for (String line; (line = in.readLine()) != null;) {
+			if (line.trim().isEmpty())
+				continue;
+			int c = 0;
+			for (int from = 0; from <= line.length(); c++) {
+				int to = line.indexOf(',', from);
+				if (to < 0)
+					to = line.length();
+				if (n == v.length)
+					v = Arrays.copyOf(v, 2 * n);
+				try {
+					v[n++] = Double.parseDouble(line.substring(from, to).trim());
+				} catch (NumberFormatException e) {
+					throw new IOException("Not a number in line " + (rows + 1) + ": " + e.getMessage());
+				}
+				from = to + 1;
+			}
+			rows = checkRow(rows, cols, c);
+			cols = c;
+		}
+		return new DoubleMatrix(rows, Math.max(cols, 0), Arrays.copyOf(v, n));
+	}
+
+	/**
+	 * Reads a Matrix from CSV: one row per line, entries separated by commas,
+	 * surrounding whitespace and empty lines are ignored.
+	 *
+	 * @throws IOException
+	 *             if the rows differ in length or an entry is no integer.
+	 */
+	public static Matrix readMatrixCsv(Reader r) throws IOException {
+		BufferedReader in = new BufferedReader(r);
+		long[] v = new long[16];
+		int n = 0;
+		int rows = 0;
+		int cols = -1;
+		for (String line; (line = in.readLine()) != null;) {
+			if (line.trim().isEmpty())
+				continue;
+			int c = 0;
+			for (int from = 0; from <= line.length(); c++) {
+				int to = line.indexOf(',', from);
+				if (to < 0)
+					to = line.length();
+				if (n == v.length)
+					v = Arrays.copyOf(v, 2 * n);
+				try {
+					v[n++] = Long.parseLong(line.substring(from, to).trim());
+				} catch (NumberFormatException e) {
+					throw new IOException("Not an integer in line " + (rows + 1) + ": " + e.getMessage());
+				}
+				from = to + 1;
+			}
+			rows = checkRow(rows, cols, c);
+			cols = c;
+		}
+		return new Matrix(rows, Math.max(cols, 0), Arrays.copyOf(v, n));
+	}
+
+	/** Checks the length of a row and returns the new number of rows. */
+	private static int checkRow(int rows, int cols, int c) throws IOException {
+		if (cols >= 0 && c != cols)
+			throw new IOException("Line " + (rows + 1) + " has " + c + " entries instead of " + cols + ".");
+		return rows + 1;
+	}
+
+}
@@ -0,0 +1,358 @@
+package jd.math.matrices;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import jd.math.random.IsPrime;
+
+/**
+ *
+ * Exact integer linear algebra by modular arithmetic. The determinant or the
+ * solution of a system is computed modulo several primes below 2^31, one
+ * independent O(n^3) elimination per prime, in parallel. The exact result is
+ * then recovered with the Chinese Remainder Theorem, for solutions followed by
+ * rational reconstruction. All intermediate values are single words, so the
+ * cost grows only linearly with the size of the result instead of with the
+ * size of the intermediate numbers.
+ *
+ * @author Juri Dispan
+ *
+ */
+
+final class Modular {
+
+	/**
+	 * Minimum size at which the modular algorithms are used. See
+	 * {@link Matrices#setModularThreshold(int)}
+	 */
+	static volatile int threshold = 32;
+
+	/** Primes below 2^31, in descending order. */
+	private static long[] primes = new long[0];
+
+	private Modular() {
+		// cannot be instatiated.
+	}
+
+	/**
+	 * Returns the i-th prime below 2^31, counted downwards. The primes are
+	 * found once by trial division and then cached.
+	 */
+	static synchronized long prime(int i) {
+		if (i >= primes.length) {
+			long[] p = Arrays.copyOf(primes, Math.max(i + 1, 2 * primes.length));
+			long c = primes.length == 0 ? Integer.MAX_VALUE : primes[primes.length - 1] - 2;
+			for (int k = primes.length; k < p.length; c -= 2) {
+				if (IsPrime.isPrime(c))
+					p[k++] = c;
+			}
+			primes = p;
+		}
+		return primes[i];
+	}
+
+	/**
+	 * Calculates the determinant of a quadratic matrix. The number of primes
+	 * is chosen by Hadamard's bound, so the result is always exact.
+	 */
+	static BigInteger determinant(long[][] a, ForkJoinPool pool) {
+		int n = a.length;
+		if (n == 0)
+			return BigInteger.ONE;
+		// |det| <= product of the row norms, so M > 2 * bound suffices
+		int bits = 1;
+		for (long[] row : a) {
+			BigInteger s = BigInteger.ZERO;
+			for (long v : row) {
+				s = s.add(BigInteger.valueOf(v).pow(2));
+			}
+			if (s.signum() == 0)
+				return BigInteger.ZERO;
+			bits += (s.bitLength() + 1) / 2;
+		}
+		int count = bits / 30 + 1;
+		long[] p = new long[count];
+		long[] r = new long[count];
+		for (int k = 0; k < count; k++) {
+			p[k] = prime(k);
+		}
+		pool.invoke(new Gemm.RowTask((from, to) -> {
+			for (int k = from; k < to; k++) {
+				r[k] = determinant(a, p[k]);
+			}
+		}, 0, count, 1));
+
+		BigInteger m = BigInteger.ONE;
+		BigInteger d = BigInteger.ZERO;
+		for (int k = 0; k < count; k++) {
+			d = crt(d, m, r[k], p[k]);
+			m = m.multiply(BigInteger.valueOf(p[k]));
+		}
+		return symmetric(d, m);
+	}
+
+	/**
+	 * Solves a * X = b for a quadratic matrix a and any number of right hand
+	 * sides. Primes are added in rounds of one per worker thread; after every
+	 * round the solution is rationally reconstructed and checked against the
+	 * system, so the number of primes adapts to the size of the solution.
+	 *
+	 * @throws ArithmeticException
+	 *             if a is singular.
+	 */
+	static Bareiss.Solution solve(long[][] a, long[][] b, ForkJoinPool pool) {
+		int n = a.length;
+		int w = n == 0 ? 0 : b[0].length;
+		// a is singular iff the product of the primes it is singular for
+		// exceeds Hadamard's bound
+		int bits = 1;
+		for (long[] row : a) {
+			BigInteger s = BigInteger.ZERO;
+			for (long v : row) {
+				s = s.add(BigInteger.valueOf(v).pow(2));
+			}
+			bits += (s.bitLength() + 1) / 2;
+		}
+		BigInteger m = BigInteger.ONE;
+		BigInteger singular = BigInteger.ONE;
+		BigInteger[][] x = new BigInteger[n][w];
+		for (BigInteger[] row : x) {
+			Arrays.fill(row, BigInteger.ZERO);
+		}
+		int round = Math.max(2, pool.getParallelism());
+		for (int next = 0;; next += round) {
+			long[] p = new long[round];
+			long[][][] r = new long[round][][];
+			for (int k = 0; k < round; k++) {
+				p[k] = prime(next + k);
+			}
+			pool.invoke(new Gemm.RowTask((from, to) -> {
+				for (int k = from; k < to; k++) {
+					r[k] = solve(a, b, p[k]);
+				}
+			}, 0, round, 1));
+
+			boolean grown = false;
+			for (int k = 0; k < round; k++) {
+				if (r[k] == null) {
+					singular = singular.multiply(BigInteger.valueOf(p[k]));
+					continue;
+				}
+				for (int i = 0; i < n; i++) {
+					for (int j = 0; j < w; j++) {
+						x[i][j] = crt(x[i][j], m, r[k][i][j], p[k]);
+					}
+				}
+				m = m.multiply(BigInteger.valueOf(p[k]));
+				grown = true;
+			}
+			if (singular.bitLength() > bits)
+				throw new ArithmeticException("Matrix is singular.");
+			if (grown) {
+				Bareiss.Solution s = reconstruct(x, m);
+				if (s != null && check(a, b, s))
+					return s;
+			}
+		}
+	}
+
+	/**
+	 * Determinant of a modulo p by Gaussian elimination.
+	 */
+	private static long determinant(long[][] a, long p) {
+		int n = a.length;
+		long[][] t = reduce(a, null, p);
+		long det = 1;
+		for (int k = 0; k < n; k++) {
+			int piv = pivot(t, k);
+			if (piv < 0)
+				return 0;
+			if (piv != k) {
+				long[] tmp = t[piv];
+				t[piv] = t[k];
+				t[k] = tmp;
+				det = p - det;
+			}
+			det = det * t[k][k] % p;
+			eliminate(t, k, k + 1, n, p);
+		}
+		return det;
+	}
+
+	/**
+	 * Solution of a * X = b modulo p by Gauss-Jordan elimination, or null if
+	 * a is singular modulo p.
+	 */
+	private static long[][] solve(long[][] a, long[][] b, long p) {
+		int n = a.length;
+		long[][] t = reduce(a, b, p);
+		int width = t.length == 0 ? 0 : t[0].length;
+		for (int k = 0; k < n; k++) {
+			int piv = pivot(t, k);
+			if (piv < 0)
+				return null;
+			long[] tmp = t[piv];
+			t[piv] = t[k];
+			t[k] = tmp;
+			long inv = inverse(t[k][k], p);
+			long[] row = t[k];
+			for (int j = k; j < width; j++) {
+				row[j] = row[j] * inv % p;
+			}
+			eliminate(t, k, 0, n, p);
+		}
+		long[][] x = new long[n][];
+		for (int i = 0; i < n; i++) {
+			x[i] = Arrays.copyOfRange(t[i], n, width);
+		}
+		return x;
+	}
+
+	/** Returns [a | b] with all entries reduced to 0 .. p-1. */
+	private static long[][] reduce(long[][] a, long[][] b, long p) {
+		int n = a.length;
+		int w = b == null || n == 0 ? 0 : b[0].length;
+		long[][] t = new long[n][n + w];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				t[i][j] = Math.floorMod(a[i][j], p);
+			}
+			for (int j = 0; j < w; j++) {
+				t[i][n + j] = Math.floorMod(b[i][j], p);
+			}
+		}
+		return t;
+	}
+
+	/** First row at or below k with a non-zero entry in column k, or -1. */
+	private static int pivot(long[][] t, int k) {
+		for (int i = k; i < t.length; i++) {
+			if (t[i][k] != 0)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Eliminates column k from the rows from .. to-1 except row k. Since all
+	 * values are below 2^31, f * row[j] + t[j] never overflows.
+	 */
+	private static void eliminate(long[][] t, int k, int from, int to, long p) {
+		long[] row = t[k];
+		long inv = row[k] == 1 ? 1 : inverse(row[k], p);
+		int width = row.length;
+		for (int i = from; i < to; i++) {
+			long[] ti = t[i];
+			if (i == k || ti[k] == 0)
+				continue;
+			long f = p - ti[k] * inv % p;
+			for (int j = k; j < width; j++) {
+				ti[j] = (ti[j] + f * row[j]) % p;
+			}
+		}
+	}
+
+	/** Inverse of a modulo p by the extended euclidian algorithm. */
+	private static long inverse(long a, long p) {
+		long r0 = p, r1 = a;
+		long s0 = 0, s1 = 1;
+		while (r1 != 0) {
+			long q = r0 / r1;
+			long t = r0 - q * r1;
+			r0 = r1;
+			r1 = t;
+			t = s0 - q * s1;
+			s0 = s1;
+			s1 = t;
+		}
+		return Math.floorMod(s0, p);
+	}
+
+	/** Returns the y with y = x (mod m) and y = r (mod p), 0 <= y < m * p. */
+	private static BigInteger crt(BigInteger x, BigInteger m, long r, long p) {
+		long xp = x.mod(BigInteger.valueOf(p)).longValue();
+		long mp = m.mod(BigInteger.valueOf(p)).longValue();
+		long h = Math.floorMod(r - xp, p) * inverse(mp, p) % p;
+		return x.add(m.multiply(BigInteger.valueOf(h)));
+	}
+
+	/** Returns the representative of x modulo m closest to zero. */
+	private static BigInteger symmetric(BigInteger x, BigInteger m) {
+		return x.shiftLeft(1).compareTo(m) > 0 ? x.subtract(m) : x;
+	}
+
+	/**
+	 * Recovers the rational solution from its residues modulo m. The
+	 * denominators found so far are multiplied into the remaining entries
+	 * first, so usually only the first entries need a real reconstruction.
+	 *
+	 * @return The solution with a common denominator, or null if m is still
+	 *         too small.
+	 */
+	private static Bareiss.Solution reconstruct(BigInteger[][] x, BigInteger m) {
+		int n = x.length;
+		int w = n == 0 ? 0 : x[0].length;
+		// 2 * bound^2 < m
+		BigInteger bound = BigInteger.ONE.shiftLeft((m.bitLength() - 2) / 2);
+		BigInteger d = BigInteger.ONE;
+		BigInteger[][] num = new BigInteger[n][w];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < w; j++) {
+				BigInteger[] q = reconstruct(x[i][j].multiply(d).mod(m), m, bound);
+				if (q == null)
+					return null;
+				// num / (q[1] * d), rescaled to the new common denominator later
+				num[i][j] = q[0];
+				if (!q[1].equals(BigInteger.ONE)) {
+					for (int k = 0; k <= i; k++) {
+						for (int l = 0; l < (k < i ? w : j); l++) {
+							num[k][l] = num[k][l].multiply(q[1]);
+						}
+					}
+					d = d.multiply(q[1]);
+				}
+			}
+		}
+		return new Bareiss.Solution(num, d);
+	}
+
+	/**
+	 * Finds n / d = u (mod m) with |n|, d <= bound by the extended euclidian
+	 * algorithm (Wang's rational reconstruction), or returns null.
+	 */
+	private static BigInteger[] reconstruct(BigInteger u, BigInteger m, BigInteger bound) {
+		BigInteger r0 = m, r1 = u;
+		BigInteger s0 = BigInteger.ZERO, s1 = BigInteger.ONE;
+		while (r1.compareTo(bound) > 0) {
+			BigInteger[] qr = r0.divideAndRemainder(r1);
+			r0 = r1;
+			r1 = qr[1];
+			BigInteger t = s0.subtract(qr[0].multiply(s1));
+			s0 = s1;
+			s1 = t;
+		}
+		if (s1.abs().compareTo(bound) > 0 || !s1.gcd(m).equals(BigInteger.ONE))
+			return null;
+		return s1.signum() < 0 ? new BigInteger[] { r1.negate(), s1.negate() } : new BigInteger[] { r1, s1 };
+	}
+
+	/** Checks a * numerators = denominator * b exactly. */
+	private static boolean check(long[][] a, long[][] b, Bareiss.Solution s) {
+		int n = a.length;
+		int w = n == 0 ? 0 : b[0].length;
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < w; j++) {
+				BigInteger sum = BigInteger.ZERO;
+				for (int k = 0; k < n; k++) {
+					if (a[i][k] != 0)
+						sum = sum.add(s.numerators[k][j].multiply(BigInteger.valueOf(a[i][k])));
+				}
+				if (!sum.equals(s.denominator.multiply(BigInteger.valueOf(b[i][j]))))
+					return false;
+			}
+		}
+		return true;
+	}
+
+}
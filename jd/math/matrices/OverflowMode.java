@@ -0,0 +1,25 @@
+package jd.math.matrices;
+
+/**
+ *
+ * How the arithmetic of {@link Matrix} deals with results that do not fit
+ * into a long. If exact results are needed whatever their size, compute with
+ * a {@link RationalMatrix} instead, which stays on longs as long as possible
+ * and switches to big numbers on the first overflow.
+ *
+ * @author Juri Dispan
+ *
+ */
+
+public enum OverflowMode {
+
+	/** Results are taken modulo 2^64, like the operators of Java do. */
+	WRAP,
+
+	/** An ArithmeticException is thrown if a result does not fit. */
+	CHECKED,
+
+	/** Results that do not fit are replaced by Long.MIN_VALUE or Long.MAX_VALUE. */
+	SATURATING
+
+}
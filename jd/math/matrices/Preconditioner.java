@@ -0,0 +1,22 @@
+package jd.math.matrices;
+
+/**
+ *
+ * An approximation M of a matrix A that is cheap to invert. Iterative solvers
+ * use it to transform A*x = b into a system that converges in fewer
+ * iterations.
+ *
+ * @author Juri Dispan
+ *
+ */
+
+public interface Preconditioner {
+
+	/**
+	 * Solves M * z = r for z and stores it in dest, which must not be r.
+	 *
+	 * @return dest
+	 */
+	double[] applyInto(double[] r, double[] dest);
+
+}
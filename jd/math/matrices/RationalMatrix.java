@@ -0,0 +1,456 @@
+package jd.math.matrices;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import jd.math.fractions.BigFraction;
+import jd.math.fractions.Fraction;
+import jd.math.fractions.Gcd;
+
+/**
+ *
+ * A matrix of exact rational numbers. As long as every numerator and
+ * denominator fits into a long, the entries are kept as pairs of longs and
+ * computed with overflow checks; the first overflow switches the matrix to
+ * {@link BigFraction} entries for good. Determinant, solve and inverse clear
+ * the denominators row by row and run a fraction-free elimination on the
+ * resulting integer matrix, so the only divisions happen when the final
+ * result is formed.
+ *
+ * @author Juri Dispan
+ *
+ */
+
+public class RationalMatrix {
+
+	/** Number of rows */
+	private final int x;
+
+	/** Number of columns */
+	private final int y;
+
+	/** Numerators and positive denominators, row-major, null if big */
+	private long[] nom;
+	private long[] denom;
+
+	/** Entries, row-major, null unless the long representation overflowed */
+	private BigFraction[] big;
+
+	/** Creates a matrix with all entries set to zero. */
+	public RationalMatrix(int rows, int cols) {
+		int n = Matrix.size(rows, cols);
+		this.x = rows;
+		this.y = cols;
+		this.nom = new long[n];
+		this.denom = new long[n];
+		Arrays.fill(this.denom, 1);
+	}
+
+	/** Creates a matrix with the (integral) entries of m. */
+	public RationalMatrix(Matrix m) {
+		this(m.getRows(), m.getColumns());
+		for (int i = 0; i < x; i++) {
+			for (int j = 0; j < y; j++) {
+				nom[i * y + j] = m.getValue(i, j);
+			}
+		}
+	}
+
+	/**
+	 * The following format is expected: Fraction[rows][columns].
+	 */
+	public RationalMatrix(Fraction[][] values) {
+		this(values.length, values.length == 0 ? 0 : values[0].length);
+		for (int i = 0; i < x; i++) {
+			for (int j = 0; j < y; j++) {
+				nom[i * y + j] = values[i][j].getNominator();
+				denom[i * y + j] = values[i][j].getDenominator();
+			}
+		}
+	}
+
+	/**
+	 * The following format is expected: BigFraction[rows][columns].
+	 */
+	public RationalMatrix(BigFraction[][] values) {
+		this(values.length, values.length == 0 ? 0 : values[0].length);
+		for (int i = 0; i < x; i++) {
+			for (int j = 0; j < y; j++) {
+				setValue(i, j, values[i][j]);
+			}
+		}
+	}
+
+	/** Returns the number of rows of this matrix. */
+	public int getRows() {
+		return x;
+	}
+
+	/** Returns the number of columns of this matrix. */
+	public int getColumns() {
+		return y;
+	}
+
+	/** Returns the value of the matrix at the specified position. */
+	public BigFraction getValue(int row, int col) {
+		int k = index(row, col);
+		return big != null ? big[k] : new BigFraction(nom[k], denom[k]);
+	}
+
+	/**
+	 * Changes the entry of the matrix at the specified position to the
+	 * specified value.
+	 */
+	public void setValue(int row, int col, BigFraction val) {
+		int k = index(row, col);
+		if (big != null) {
+			big[k] = val;
+		} else if (val.getNominator().bitLength() < 64 && val.getDenominator().bitLength() < 64) {
+			nom[k] = val.getNominator().longValue();
+			denom[k] = val.getDenominator().longValue();
+		} else {
+			promote();
+			big[k] = val;
+		}
+	}
+
+	/**
+	 * Changes the entry of the matrix at the specified position to the
+	 * specified value.
+	 */
+	public void setValue(int row, int col, Fraction val) {
+		int k = index(row, col);
+		if (big != null) {
+			big[k] = new BigFraction(val.getNominator(), val.getDenominator());
+		} else {
+			nom[k] = val.getNominator();
+			denom[k] = val.getDenominator();
+		}
+	}
+
+	private int index(int row, int col) {
+		if (row < 0 || row >= x || col < 0 || col >= y)
+			throw new IndexOutOfBoundsException("(" + row + ", " + col + ")");
+		return row * y + col;
+	}
+
+	/** Switches to BigFraction entries. */
+	private void promote() {
+		big = new BigFraction[nom.length];
+		for (int k = 0; k < big.length; k++) {
+			big[k] = new BigFraction(nom[k], denom[k]);
+		}
+		nom = null;
+		denom = null;
+	}
+
+	/**
+	 * Adds an other matrix to this matrix.
+	 *
+	 * @return this + b
+	 * @throws IllegalArgumentException
+	 *             if b's dimensions are illegal.
+	 */
+	public RationalMatrix add(RationalMatrix b) {
+		if (this.x != b.x || this.y != b.y)
+			throw new IllegalArgumentException("Sizes don't match");
+		RationalMatrix r = new RationalMatrix(x, y);
+		if (this.big == null && b.big == null) {
+			try {
+				long[] t = new long[2];
+				for (int k = 0; k < nom.length; k++) {
+					add(nom[k], denom[k], b.nom[k], b.denom[k], t, 0);
+					r.nom[k] = t[0];
+					r.denom[k] = t[1];
+				}
+				return r;
+			} catch (ArithmeticException e) {
+				// overflow, start over with BigFractions
+			}
+		}
+		r.promote();
+		for (int i = 0; i < x; i++) {
+			for (int j = 0; j < y; j++) {
+				r.big[i * y + j] = getValue(i, j).plus(b.getValue(i, j));
+			}
+		}
+		return r;
+	}
+
+	/**
+	 * Multiply this matrix by an other matrix.
+	 *
+	 * @param b
+	 *            The matrix to be multiplied on the right side of this.
+	 * @return Matrix product (this*b)
+	 * @throws IllegalArgumentException
+	 *             if b's dimensions are illegal.
+	 */
+	public RationalMatrix multiply(RationalMatrix b) {
+		if (this.y != b.x)
+			throw new IllegalArgumentException("Sizes don't match");
+		int p = b.y;
+		RationalMatrix r = new RationalMatrix(x, p);
+		if (this.big == null && b.big == null) {
+			try {
+				long[] t = new long[2];
+				for (int i = 0; i < x; i++) {
+					for (int j = 0; j < p; j++) {
+						long n = 0;
+						long d = 1;
+						for (int k = 0; k < y; k++) {
+							int a = i * y + k;
+							int c = k * p + j;
+							if (nom[a] == 0 || b.nom[c] == 0)
+								continue;
+							multiply(nom[a], denom[a], b.nom[c], b.denom[c], t, 0);
+							add(n, d, t[0], t[1], t, 0);
+							n = t[0];
+							d = t[1];
+						}
+						r.nom[i * p + j] = n;
+						r.denom[i * p + j] = d;
+					}
+				}
+				return r;
+			} catch (ArithmeticException e) {
+				// overflow, start over with BigFractions
+			}
+		}
+		r.promote();
+		BigFraction zero = new BigFraction(0, 1);
+		for (int i = 0; i < x; i++) {
+			for (int j = 0; j < p; j++) {
+				BigFraction s = zero;
+				for (int k = 0; k < y; k++) {
+					s = s.plus(getValue(i, k).multiply(b.getValue(k, j)));
+				}
+				r.big[i * p + j] = s;
+			}
+		}
+		return r;
+	}
+
+	/**
+	 * Calculates the exact determinant of the matrix in O(n^3).
+	 *
+	 * @throws ArithmethicException
+	 *             if the matrix is not quadratic.
+	 */
+	public BigFraction determinant() {
+		if (x != y)
+			throw new ArithmeticException("Matrix is not quadratic.");
+		BigInteger[] scale = new BigInteger[x];
+		BigInteger[][] a = clearDenominators(null, scale);
+		BigInteger s = BigInteger.ONE;
+		for (BigInteger l : scale) {
+			s = s.multiply(l);
+		}
+		long[][] la = toLong(a);
+		return new BigFraction(la != null ? Bareiss.determinant(la) : Bareiss.determinant(a), s);
+	}
+
+	/**
+	 * Solves this * X = b exactly.
+	 *
+	 * @param b
+	 *            A matrix with as many rows as this one. Every column is
+	 *            treated as a right hand side of its own.
+	 * @return The matrix X with this * X = b.
+	 * @throws IllegalArgumentException
+	 *             if b's dimensions are illegal.
+	 * @throws ArithmethicException
+	 *             if the matrix is not quadratic or singular.
+	 */
+	public RationalMatrix solve(RationalMatrix b) {
+		if (b.x != this.x)
+			throw new IllegalArgumentException("Sizes don't match");
+		if (x != y)
+			throw new ArithmeticException("Matrix is not quadratic.");
+		BigInteger[] scale = new BigInteger[x];
+		BigInteger[][] a = clearDenominators(b, scale);
+		BigInteger[][] rhs = new BigInteger[x][b.y];
+		for (int i = 0; i < x; i++) {
+			System.arraycopy(a[i], y, rhs[i], 0, b.y);
+		}
+		return solve(a, rhs);
+	}
+
+	/**
+	 * Returns the exact inverse of this matrix.
+	 *
+	 * @throws ArithmethicException
+	 *             if the matrix is not quadratic or singular.
+	 */
+	public RationalMatrix inverse() {
+		if (x != y)
+			throw new ArithmeticException("Matrix is not quadratic.");
+		// this = D^-1 * A with D = diag(scale), so this^-1 = A^-1 * D
+		BigInteger[] scale = new BigInteger[x];
+		BigInteger[][] a = clearDenominators(null, scale);
+		BigInteger[][] d = new BigInteger[x][x];
+		for (int i = 0; i < x; i++) {
+			Arrays.fill(d[i], BigInteger.ZERO);
+			d[i][i] = scale[i];
+		}
+		return solve(a, d);
+	}
+
+	/**
+	 * Solves the integer system a * X = b, on longs if all entries fit.
+	 */
+	private static RationalMatrix solve(BigInteger[][] a, BigInteger[][] b) {
+		Bareiss.Solution s;
+		long[][] la = toLong(a);
+		long[][] lb = la == null ? null : toLong(b);
+		if (lb != null)
+			s = Bareiss.solve(la, lb);
+		else
+			s = Bareiss.solve(a, b);
+		int n = a.length;
+		int m = n == 0 ? 0 : b[0].length;
+		RationalMatrix r = new RationalMatrix(n, m);
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < m; j++) {
+				r.setValue(i, j, new BigFraction(s.numerators[i][j], s.denominator));
+			}
+		}
+		return r;
+	}
+
+	/**
+	 * Multiplies every row of this matrix (extended by the same row of b, if b
+	 * is not null) by the lcm of its denominators and returns the resulting
+	 * integer matrix. The factors are stored in scale.
+	 */
+	private BigInteger[][] clearDenominators(RationalMatrix b, BigInteger[] scale) {
+		int w = b == null ? y : y + b.y;
+		BigInteger[][] r = new BigInteger[x][w];
+		BigFraction[] row = new BigFraction[w];
+		for (int i = 0; i < x; i++) {
+			BigInteger l = BigInteger.ONE;
+			for (int j = 0; j < w; j++) {
+				row[j] = j < y ? getValue(i, j) : b.getValue(i, j - y);
+				BigInteger d = row[j].getDenominator();
+				if (!d.equals(BigInteger.ONE))
+					l = l.divide(l.gcd(d)).multiply(d);
+			}
+			for (int j = 0; j < w; j++) {
+				r[i][j] = row[j].getNominator().multiply(l.divide(row[j].getDenominator()));
+			}
+			scale[i] = l;
+		}
+		return r;
+	}
+
+	private static long[][] toLong(BigInteger[][] a) {
+		long[][] r = new long[a.length][];
+		for (int i = 0; i < a.length; i++) {
+			r[i] = new long[a[i].length];
+			for (int j = 0; j < a[i].length; j++) {
+				if (a[i][j].bitLength() > 62)
+					return null;
+				r[i][j] = a[i][j].longValue();
+			}
+		}
+		return r;
+	}
+
+	/**
+	 * Stores n1/d1 + n2/d2 in lowest terms at t[k] and t[k+1]. The gcd of the
+	 * denominators is divided out first to keep the products small.
+	 *
+	 * @throws ArithmeticException
+	 *             if the result does not fit into longs.
+	 */
+	private static void add(long n1, long d1, long n2, long d2, long[] t, int k) {
+		if (n1 == 0) {
+			t[k] = n2;
+			t[k + 1] = d2;
+			return;
+		}
+		long g = gcd(d1, d2);
+		long s = Math.addExact(Math.multiplyExact(n1, d2 / g), Math.multiplyExact(n2, d1 / g));
+		long g2 = gcd(s, g);
+		t[k] = s / g2;
+		t[k + 1] = Math.multiplyExact(d1 / g, d2 / g2);
+	}
+
+	/**
+	 * Stores n1/d1 * n2/d2 in lowest terms at t[k] and t[k+1], cancelling
+	 * crosswise before multiplying.
+	 */
+	private static void multiply(long n1, long d1, long n2, long d2, long[] t, int k) {
+		long g1 = gcd(n1, d2);
+		long g2 = gcd(n2, d1);
+		t[k] = Math.multiplyExact(n1 / g1, n2 / g2);
+		t[k + 1] = Math.multiplyExact(d1 / g2, d2 / g1);
+	}
+
+	/** gcd of |a| and |b|, with gcd(0, 0) = 1 */
+	private static long gcd(long a, long b) {
+		long g = Gcd.gcd(a, b);
+		return g == 0 ? 1 : g;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < x; i++) {
+			for (int j = 0; j < y; j++) {
+				s.append(getValue(i, j));
+				if (j < y - 1)
+					s.append('\t');
+			}
+			if (i < x - 1)
+				s.append('\n');
+		}
+		return s.toString();
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		for (int i = 0; i < x; i++) {
+			for (int j = 0; j < y; j++) {
+				result = prime * result + getValue(i, j).hashCode();
+			}
+		}
+		result = prime * result + x;
+		result = prime * result + y;
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null) {
+			return false;
+		}
+		if (!(obj instanceof RationalMatrix)) {
+			return false;
+		}
+		RationalMatrix other = (RationalMatrix) obj;
+		if (x != other.x) {
+			return false;
+		}
+		if (y != other.y) {
+			return false;
+		}
+		if (big == null && other.big == null) {
+			return Arrays.equals(nom, other.nom) && Arrays.equals(denom, other.denom);
+		}
+		for (int i = 0; i < x; i++) {
+			for (int j = 0; j < y; j++) {
+				if (!getValue(i, j).equals(other.getValue(i, j))) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+}
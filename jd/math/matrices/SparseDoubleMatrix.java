@@ -0,0 +1,360 @@
+package jd.math.matrices;
+
+import java.util.Arrays;
+
+/**
+ *
+ * A sparse matrix of double values in compressed sparse row (CSR) format. Only
+ * the non-zero entries are stored: the entries of row i are at the indices
+ * rowStart[i] .. rowStart[i+1]-1 of colIndex and values, sorted by column.
+ * Instances are immutable and created with a {@link Builder} or from a
+ * {@link DoubleMatrix}.
+ *
+ * @author Juri Dispan
+ *
+ */
+
+public class SparseDoubleMatrix implements LinearOperator {
+
+	private final int x; // rows
+	private final int y; // columns
+
+	private final int[] rowStart;
+	private final int[] colIndex;
+	private final double[] values;
+
+	private SparseDoubleMatrix(int rows, int cols, int[] rowStart, int[] colIndex, double[] values) {
+		this.x = rows;
+		this.y = cols;
+		this.rowStart = rowStart;
+		this.colIndex = colIndex;
+		this.values = values;
+	}
+
+	/**
+	 * Creates a sparse matrix containing the non-zero entries of m.
+	 */
+	public static SparseDoubleMatrix valueOf(DoubleMatrix m) {
+		int rows = m.getRows();
+		int cols = m.getColumns();
+		int nnz = 0;
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < cols; j++) {
+				if (m.getValue(i, j) != 0)
+					nnz++;
+			}
+		}
+		int[] start = new int[rows + 1];
+		int[] col = new int[nnz];
+		double[] val = new double[nnz];
+		for (int i = 0, k = 0; i < rows; i++) {
+			for (int j = 0; j < cols; j++) {
+				double v = m.getValue(i, j);
+				if (v != 0) {
+					col[k] = j;
+					val[k] = v;
+					k++;
+				}
+			}
+			start[i + 1] = k;
+		}
+		return new SparseDoubleMatrix(rows, cols, start, col, val);
+	}
+
+	/** Returns the number of rows of this matrix. */
+	@Override
+	public int getRows() {
+		return this.x;
+	}
+
+	/** Returns the number of columns of this matrix. */
+	@Override
+	public int getColumns() {
+		return this.y;
+	}
+
+	/** Returns the number of stored (non-zero) entries. */
+	public int getNonZeros() {
+		return this.values.length;
+	}
+
+	/** Start of every row in colIndex() and values(), plus the end. */
+	int[] rowStart() {
+		return this.rowStart;
+	}
+
+	/** Column of every stored entry. */
+	int[] colIndex() {
+		return this.colIndex;
+	}
+
+	/** Value of every stored entry. */
+	double[] values() {
+		return this.values;
+	}
+
+	/**
+	 * Returns the value at the specified position. Takes O(log k) for a row
+	 * with k non-zero entries.
+	 */
+	public double getValue(int row, int col) {
+		if (row < 0 || row >= this.x || col < 0 || col >= this.y)
+			throw new IndexOutOfBoundsException("(" + row + ", " + col + ")");
+		int k = Arrays.binarySearch(this.colIndex, this.rowStart[row], this.rowStart[row + 1], col);
+		return k < 0 ? 0 : this.values[k];
+	}
+
+	/**
+	 * Multiplies this matrix by a vector.
+	 *
+	 * @param v
+	 *            A vector with as many entries as this matrix has columns.
+	 * @return this * v
+	 * @throws IllegalArgumentException
+	 *             if v's length is illegal.
+	 */
+	public double[] multiply(double[] v) {
+		return multiplyInto(v, new double[this.x]);
+	}
+
+	/**
+	 * Stores this * v in dest, which must not be v.
+	 *
+	 * @return dest
+	 * @throws IllegalArgumentException
+	 *             if the lengths of v or dest are illegal.
+	 */
+	@Override
+	public double[] multiplyInto(double[] v, double[] dest) {
+		if (v.length != this.y || dest.length != this.x)
+			throw new IllegalArgumentException("Sizes don't match");
+		for (int i = 0; i < this.x; i++) {
+			double s = 0;
+			for (int k = this.rowStart[i], end = this.rowStart[i + 1]; k < end; k++) {
+				s += this.values[k] * v[this.colIndex[k]];
+			}
+			dest[i] = s;
+		}
+		return dest;
+	}
+
+	/**
+	 * Multiplies this matrix by a dense matrix. Only the non-zero entries of
+	 * this matrix are visited, so the cost is O(nonzeros * b's columns).
+	 *
+	 * @param b
+	 *            The matrix to be multiplied on the right side of this.
+	 * @return Matrix product (this*b)
+	 * @throws IllegalArgumentException
+	 *             if b's dimensions are illegal.
+	 */
+	public DoubleMatrix multiply(DoubleMatrix b) {
+		if (this.y != b.getRows())
+			throw new IllegalArgumentException("Sizes don't match");
+		int p = b.getColumns();
+		double[] c = new double[DoubleMatrix.size(this.x, p)];
+		double[][] rows = b.toArray();
+		for (int i = 0; i < this.x; i++) {
+			int ci = i * p;
+			for (int k = this.rowStart[i], end = this.rowStart[i + 1]; k < end; k++) {
+				double a = this.values[k];
+				double[] bk = rows[this.colIndex[k]];
+				for (int j = 0; j < p; j++) {
+					c[ci + j] += a * bk[j];
+				}
+			}
+		}
+		return new DoubleMatrix(this.x, p, c);
+	}
+
+	/**
+	 * @return A dense copy of this matrix.
+	 */
+	public DoubleMatrix toDoubleMatrix() {
+		double[] d = new double[DoubleMatrix.size(this.x, this.y)];
+		for (int i = 0; i < this.x; i++) {
+			for (int k = this.rowStart[i], end = this.rowStart[i + 1]; k < end; k++) {
+				d[i * this.y + this.colIndex[k]] = this.values[k];
+			}
+		}
+		return new DoubleMatrix(this.x, this.y, d);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < this.x; i++) {
+			for (int k = this.rowStart[i], end = this.rowStart[i + 1]; k < end; k++) {
+				if (s.length() > 0)
+					s.append('\n');
+				s.append('(').append(i).append(", ").append(this.colIndex[k]).append(")\t").append(this.values[k]);
+			}
+		}
+		return s.toString();
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + Arrays.hashCode(colIndex);
+		result = prime * result + Arrays.hashCode(rowStart);
+		result = prime * result + Arrays.hashCode(values);
+		result = prime * result + x;
+		result = prime * result + y;
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null) {
+			return false;
+		}
+		if (!(obj instanceof SparseDoubleMatrix)) {
+			return false;
+		}
+		SparseDoubleMatrix other = (SparseDoubleMatrix) obj;
+		if (x != other.x) {
+			return false;
+		}
+		if (y != other.y) {
+			return false;
+		}
+		if (!Arrays.equals(rowStart, other.rowStart)) {
+			return false;
+		}
+		if (!Arrays.equals(colIndex, other.colIndex)) {
+			return false;
+		}
+		if (!Arrays.equals(values, other.values)) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Collects the entries of a sparse matrix as (row, column, value) triplets
+	 * in any order. Entries given more than once for the same position are
+	 * summed up, entries that end up zero are dropped.
+	 */
+	public static class Builder {
+
+		private final int x;
+		private final int y;
+
+		private int size;
+		private int[] rows = new int[16];
+		private int[] cols = new int[16];
+		private double[] vals = new double[16];
+
+		/**
+		 * @param rows
+		 *            Number of rows of the matrix to build.
+		 * @param cols
+		 *            Number of columns of the matrix to build.
+		 */
+		public Builder(int rows, int cols) {
+			if (rows < 0 || cols < 0)
+				throw new IllegalArgumentException("Illegal matrix dimensions.");
+			this.x = rows;
+			this.y = cols;
+		}
+
+		/**
+		 * Adds value to the entry at the specified position.
+		 *
+		 * @return this builder
+		 */
+		public Builder add(int row, int col, double value) {
+			if (row < 0 || row >= this.x || col < 0 || col >= this.y)
+				throw new IndexOutOfBoundsException("(" + row + ", " + col + ")");
+			if (this.size == this.rows.length) {
+				int n = this.size * 2;
+				this.rows = Arrays.copyOf(this.rows, n);
+				this.cols = Arrays.copyOf(this.cols, n);
+				this.vals = Arrays.copyOf(this.vals, n);
+			}
+			this.rows[this.size] = row;
+			this.cols[this.size] = col;
+			this.vals[this.size] = value;
+			this.size++;
+			return this;
+		}
+
+		/**
+		 * Creates the matrix in O(triplets + rows) plus the sorting of every
+		 * row.
+		 */
+		public SparseDoubleMatrix build() {
+			// counting sort by row
+			int[] start = new int[this.x + 1];
+			for (int k = 0; k < this.size; k++) {
+				start[this.rows[k] + 1]++;
+			}
+			for (int i = 0; i < this.x; i++) {
+				start[i + 1] += start[i];
+			}
+			int[] next = Arrays.copyOf(start, this.x);
+			int[] col = new int[this.size];
+			double[] val = new double[this.size];
+			for (int k = 0; k < this.size; k++) {
+				int pos = next[this.rows[k]]++;
+				col[pos] = this.cols[k];
+				val[pos] = this.vals[k];
+			}
+
+			// sort every row by column, merge duplicates and drop zeros
+			int[] rowStart = new int[this.x + 1];
+			int nnz = 0;
+			for (int i = 0; i < this.x; i++) {
+				sortRow(col, val, start[i], start[i + 1]);
+				for (int k = start[i]; k < start[i + 1]; k++) {
+					double v = val[k];
+					while (k + 1 < start[i + 1] && col[k + 1] == col[k]) {
+						v += val[++k];
+					}
+					if (v != 0) {
+						col[nnz] = col[k];
+						val[nnz] = v;
+						nnz++;
+					}
+				}
+				rowStart[i + 1] = nnz;
+			}
+			return new SparseDoubleMatrix(this.x, this.y, rowStart, Arrays.copyOf(col, nnz), Arrays.copyOf(val, nnz));
+		}
+
+		/** Insertion sort for short rows, index sort for long ones. */
+		private static void sortRow(int[] col, double[] val, int from, int to) {
+			if (to - from <= 32) {
+				for (int k = from + 1; k < to; k++) {
+					int c = col[k];
+					double v = val[k];
+					int l = k - 1;
+					while (l >= from && col[l] > c) {
+						col[l + 1] = col[l];
+						val[l + 1] = val[l];
+						l--;
+					}
+					col[l + 1] = c;
+					val[l + 1] = v;
+				}
+				return;
+			}
+			long[] keys = new long[to - from];
+			for (int k = from; k < to; k++) {
+				keys[k - from] = ((long) col[k] << 32) | (k - from);
+			}
+			Arrays.sort(keys);
+			double[] v = Arrays.copyOfRange(val, from, to);
+			for (int k = 0; k < keys.length; k++) {
+				col[from + k] = (int) (keys[k] >>> 32);
+				val[from + k] = v[(int) keys[k]];
+			}
+		}
+	}
+
+}
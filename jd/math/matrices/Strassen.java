@@ -0,0 +1,268 @@
+package jd.math.matrices;
+
+import java.util.Arrays;
+
+/**
+ *
+ * Strassen's algorithm for large matrix products. Each step splits the
+ * factors into quadrants and needs only seven products of half the size
+ * instead of eight, so the cost drops to O(n^2.81). Below the crossover size
+ * the recursion falls back to the blocked kernel of {@link Gemm}, which is
+ * faster for small matrices. The number of halvings is set by the smallest of
+ * the three dimensions, and each dimension is padded with zeros to a multiple
+ * of 2^halvings on its own, so skinny products are not blown up to a big
+ * square; a product whose smallest dimension is below the crossover size is
+ * handed to {@link Gemm} directly.
+ *
+ * @author Juri Dispan
+ *
+ */
+
+final class Strassen {
+
+	/**
+	 * Products whose smallest dimension is at most this size are multiplied
+	 * classically, see {@link Matrices#setStrassenThreshold(int)}
+	 */
+	static volatile int threshold = 256;
+
+	private Strassen() {
+		// cannot be instatiated.
+	}
+
+	/**
+	 * Returns how often a product with smallest dimension n is halved until
+	 * that dimension is no larger than the threshold.
+	 */
+	static int levels(int n, int threshold) {
+		int shift = 0;
+		while ((n - 1 >> shift) + 1 > threshold) {
+			shift++;
+		}
+		return shift;
+	}
+
+	/** Returns the smallest multiple of 2^levels that is >= n. */
+	private static int pad(int n, int levels) {
+		return ((n - 1 >> levels) + 1) << levels;
+	}
+
+	/**
+	 * Stores a*b in c, where a is an nxm, b an mxp and c an nxp matrix, each
+	 * stored row-major in a flat array starting at the given offset, with the
+	 * given distance between the starts of two consecutive rows. c is
+	 * overwritten.
+	 */
+	static void multiply(int n, int m, int p, double[] a, int aOff, int lda, double[] b, int bOff, int ldb, double[] c,
+			int cOff, int ldc) {
+		for (int i = 0; i < n; i++) {
+			Arrays.fill(c, cOff + i * ldc, cOff + i * ldc + p, 0);
+		}
+		int levels = n == 0 || m == 0 || p == 0 ? 0 : levels(Math.min(n, Math.min(m, p)), threshold);
+		if (levels == 0) {
+			Gemm.multiply(n, m, p, a, aOff, lda, b, bOff, ldb, c, cOff, ldc);
+			return;
+		}
+		int pn = pad(n, levels);
+		int pm = pad(m, levels);
+		int pp = pad(p, levels);
+		double[] pa = new double[DoubleMatrix.size(pn, pm)];
+		double[] pb = new double[DoubleMatrix.size(pm, pp)];
+		// the padded product has to fit into an array as well
+		DoubleMatrix.size(pn, pp);
+		for (int i = 0; i < n; i++) {
+			System.arraycopy(a, aOff + i * lda, pa, i * pm, m);
+		}
+		for (int i = 0; i < m; i++) {
+			System.arraycopy(b, bOff + i * ldb, pb, i * pp, p);
+		}
+		double[] pc = multiply(pa, pb, pn, pm, pp, levels);
+		for (int i = 0; i < n; i++) {
+			System.arraycopy(pc, i * pp, c, cOff + i * ldc, p);
+		}
+	}
+
+	/**
+	 * Multiplies a packed nxm by a packed mxp matrix, all dimensions being
+	 * multiples of 2^levels.
+	 */
+	private static double[] multiply(double[] a, double[] b, int n, int m, int p, int levels) {
+		double[] c = new double[n * p];
+		if (levels == 0) {
+			Gemm.multiply(n, m, p, a, 0, m, b, 0, p, c, 0, p);
+			return c;
+		}
+		int h = n / 2;
+		int k = m / 2;
+		int w = p / 2;
+		double[] a11 = quadrant(a, n, m, 0, 0);
+		double[] a12 = quadrant(a, n, m, 0, k);
+		double[] a21 = quadrant(a, n, m, h, 0);
+		double[] a22 = quadrant(a, n, m, h, k);
+		double[] b11 = quadrant(b, m, p, 0, 0);
+		double[] b12 = quadrant(b, m, p, 0, w);
+		double[] b21 = quadrant(b, m, p, k, 0);
+		double[] b22 = quadrant(b, m, p, k, w);
+		int l = levels - 1;
+
+		double[] m1 = multiply(add(a11, a22), add(b11, b22), h, k, w, l);
+		double[] m2 = multiply(add(a21, a22), b11, h, k, w, l);
+		double[] m3 = multiply(a11, subtract(b12, b22), h, k, w, l);
+		double[] m4 = multiply(a22, subtract(b21, b11), h, k, w, l);
+		double[] m5 = multiply(add(a11, a12), b22, h, k, w, l);
+		double[] m6 = multiply(subtract(a21, a11), add(b11, b12), h, k, w, l);
+		double[] m7 = multiply(subtract(a12, a22), add(b21, b22), h, k, w, l);
+
+		for (int i = 0; i < h; i++) {
+			int top = i * p;
+			int bottom = (i + h) * p;
+			for (int j = 0, q = i * w; j < w; j++, q++) {
+				c[top + j] = m1[q] + m4[q] - m5[q] + m7[q];
+				c[top + w + j] = m3[q] + m5[q];
+				c[bottom + j] = m2[q] + m4[q];
+				c[bottom + w + j] = m1[q] - m2[q] + m3[q] + m6[q];
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * Copies the (rows/2)x(cols/2) block at (row, col) of a packed rowsxcols
+	 * matrix.
+	 */
+	private static double[] quadrant(double[] a, int rows, int cols, int row, int col) {
+		int h = rows / 2;
+		int w = cols / 2;
+		double[] r = new double[h * w];
+		for (int i = 0; i < h; i++) {
+			System.arraycopy(a, (row + i) * cols + col, r, i * w, w);
+		}
+		return r;
+	}
+
+	private static double[] add(double[] a, double[] b) {
+		double[] r = new double[a.length];
+		for (int i = 0; i < r.length; i++) {
+			r[i] = a[i] + b[i];
+		}
+		return r;
+	}
+
+	private static double[] subtract(double[] a, double[] b) {
+		double[] r = new double[a.length];
+		for (int i = 0; i < r.length; i++) {
+			r[i] = a[i] - b[i];
+		}
+		return r;
+	}
+
+	/**
+	 * Stores a*b in c, where a is an nxm, b an mxp and c an nxp matrix, each
+	 * stored row-major in a flat array starting at the given offset, with the
+	 * given distance between the starts of two consecutive rows. c is
+	 * overwritten.
+	 */
+	static void multiply(int n, int m, int p, long[] a, int aOff, int lda, long[] b, int bOff, int ldb, long[] c,
+			int cOff, int ldc) {
+		for (int i = 0; i < n; i++) {
+			Arrays.fill(c, cOff + i * ldc, cOff + i * ldc + p, 0);
+		}
+		int levels = n == 0 || m == 0 || p == 0 ? 0 : levels(Math.min(n, Math.min(m, p)), threshold);
+		if (levels == 0) {
+			Gemm.multiply(n, m, p, a, aOff, lda, b, bOff, ldb, c, cOff, ldc);
+			return;
+		}
+		int pn = pad(n, levels);
+		int pm = pad(m, levels);
+		int pp = pad(p, levels);
+		long[] pa = new long[Matrix.size(pn, pm)];
+		long[] pb = new long[Matrix.size(pm, pp)];
+		// the padded product has to fit into an array as well
+		Matrix.size(pn, pp);
+		for (int i = 0; i < n; i++) {
+			System.arraycopy(a, aOff + i * lda, pa, i * pm, m);
+		}
+		for (int i = 0; i < m; i++) {
+			System.arraycopy(b, bOff + i * ldb, pb, i * pp, p);
+		}
+		long[] pc = multiply(pa, pb, pn, pm, pp, levels);
+		for (int i = 0; i < n; i++) {
+			System.arraycopy(pc, i * pp, c, cOff + i * ldc, p);
+		}
+	}
+
+	/**
+	 * Multiplies a packed nxm by a packed mxp matrix, all dimensions being
+	 * multiples of 2^levels.
+	 */
+	private static long[] multiply(long[] a, long[] b, int n, int m, int p, int levels) {
+		long[] c = new long[n * p];
+		if (levels == 0) {
+			Gemm.multiply(n, m, p, a, 0, m, b, 0, p, c, 0, p);
+			return c;
+		}
+		int h = n / 2;
+		int k = m / 2;
+		int w = p / 2;
+		long[] a11 = quadrant(a, n, m, 0, 0);
+		long[] a12 = quadrant(a, n, m, 0, k);
+		long[] a21 = quadrant(a, n, m, h, 0);
+		long[] a22 = quadrant(a, n, m, h, k);
+		long[] b11 = quadrant(b, m, p, 0, 0);
+		long[] b12 = quadrant(b, m, p, 0, w);
+		long[] b21 = quadrant(b, m, p, k, 0);
+		long[] b22 = quadrant(b, m, p, k, w);
+		int l = levels - 1;
+
+		long[] m1 = multiply(add(a11, a22), add(b11, b22), h, k, w, l);
+		long[] m2 = multiply(add(a21, a22), b11, h, k, w, l);
+		long[] m3 = multiply(a11, subtract(b12, b22), h, k, w, l);
+		long[] m4 = multiply(a22, subtract(b21, b11), h, k, w, l);
+		long[] m5 = multiply(add(a11, a12), b22, h, k, w, l);
+		long[] m6 = multiply(subtract(a21, a11), add(b11, b12), h, k, w, l);
+		long[] m7 = multiply(subtract(a12, a22), add(b21, b22), h, k, w, l);
+
+		for (int i = 0; i < h; i++) {
+			int top = i * p;
+			int bottom = (i + h) * p;
+			for (int j = 0, q = i * w; j < w; j++, q++) {
+				c[top + j] = m1[q] + m4[q] - m5[q] + m7[q];
+				c[top + w + j] = m3[q] + m5[q];
+				c[bottom + j] = m2[q] + m4[q];
+				c[bottom + w + j] = m1[q] - m2[q] + m3[q] + m6[q];
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * Copies the (rows/2)x(cols/2) block at (row, col) of a packed rowsxcols
+	 * matrix.
+	 */
+	private static long[] quadrant(long[] a, int rows, int cols, int row, int col) {
+		int h = rows / 2;
+		int w = cols / 2;
+		long[] r = new long[h * w];
+		for (int i = 0; i < h; i++) {
+			System.arraycopy(a, (row + i) * cols + col, r, i * w, w);
+		}
+		return r;
+	}
+
+	private static long[] add(long[] a, long[] b) {
+		long[] r = new long[a.length];
+		for (int i = 0; i < r.length; i++) {
+			r[i] = a[i] + b[i];
+		}
+		return r;
+	}
+
+	private static long[] subtract(long[] a, long[] b) {
+		long[] r = new long[a.length];
+		for (int i = 0; i < r.length; i++) {
+			r[i] = a[i] - b[i];
+		}
+		return r;
+	}
+
+}